@@ -1,19 +1,22 @@
 package aislayer;
 
 import aislayer.panels.ConfigPanel;
+import aislayer.utils.DescriptionNormalizer;
+import aislayer.utils.KeywordIndex;
+import aislayer.utils.KnowledgeRegistry;
+import aislayer.utils.LLMEndpoint;
+import aislayer.utils.LLMRouter;
+import aislayer.utils.PerformanceConfig;
 import com.badlogic.gdx.Gdx;
 import com.megacrit.cardcrawl.actions.GameActionManager;
 import com.megacrit.cardcrawl.cards.AbstractCard;
 import com.megacrit.cardcrawl.core.Settings;
 import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
-import com.megacrit.cardcrawl.map.MapEdge;
-import com.megacrit.cardcrawl.map.MapRoomNode;
 import com.megacrit.cardcrawl.monsters.AbstractMonster;
 import com.megacrit.cardcrawl.orbs.AbstractOrb;
 import com.megacrit.cardcrawl.potions.AbstractPotion;
 import com.megacrit.cardcrawl.powers.AbstractPower;
 import com.megacrit.cardcrawl.relics.AbstractRelic;
-import com.megacrit.cardcrawl.rooms.MonsterRoomBoss;
 import com.megacrit.cardcrawl.ui.panels.EnergyPanel;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -21,24 +24,22 @@ import org.json.JSONObject;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 
 public class AISlayer {
 
     public static boolean intentUpdated = false;
-    public static ArrayList<String> knownPotions = new ArrayList<>();
-    public static ArrayList<String> knownRelics = new ArrayList<>();
-    public static ArrayList<String> knownCards = new ArrayList<>();
-    public static ArrayList<String> knownKeywords = new ArrayList<>();
-    public static ArrayList<String> allDescriptions = new ArrayList<>();
-    public static ArrayList<AbstractCard> allCards = new ArrayList<>();
-    public static ArrayList<AbstractRelic> allRelics = new ArrayList<>();
-    public static ArrayList<AbstractPotion> allPotions = new ArrayList<>();
 
     public static String apiKey;
     public static String apiUrl;
     public static String model;
 
+    // 配置面板中选中的平台，路由时评分相同优先使用
+    public static LLMEndpoint primaryEndpoint;
+    // refreshProviders 的结果
+    private static volatile boolean aiStarted = false;
+
     public static String handleDescription (AbstractCard card) {
         return handleDescription(card.rawDescription, card);
     }
@@ -48,25 +49,12 @@ public class AISlayer {
     }
 
     public static String handleDescription (String description, AbstractCard card) {
-        description = description.replace("NL", "");
         if (card != null) {
-            description = description.replace("!B!", card.baseBlock + "(基础)");
-            description = description.replace("!M!", card.baseMagicNumber + "(基础)");
-            description = description.replace("!D!", card.baseDamage + "(基础)");
-        }
-        description = description.replace("[E]", "能量");
-        description = description.replace("[W]", "能量");
-        description = description.replace("[R]", "能量");
-        description = description.replace("[B]", "能量");
-        description = description.replace("[P]", "能量");
-        description = description.replace("[G]", "能量");
-        description = description.replace("#g", "");
-        description = description.replace("#r", "");
-        description = description.replace("#b", "");
-        description = description.replace("#y", "");
-        description = description.replace("#p", "");
-        description = description.replace(" ", "");
-        allDescriptions.add(description);
+            description = DescriptionNormalizer.normalize(description, true, card.baseBlock, card.baseMagicNumber, card.baseDamage);
+        } else {
+            description = DescriptionNormalizer.normalize(description, false, 0, 0, 0);
+        }
+        KeywordIndex.observe(description);
         return description;
     }
 
@@ -117,7 +105,7 @@ public class AISlayer {
             potions.add(potion.name);
         }
         playerJson.put("药水", potions);
-        allPotions.addAll(AbstractDungeon.player.potions);
+        KnowledgeRegistry.offerPotions(AbstractDungeon.player.potions);
 
         //充能球
         ArrayList<JSONObject> orbsJson = new ArrayList<>();
@@ -149,7 +137,7 @@ public class AISlayer {
             relics.add(r.name + status);
         }
         playerJson.put("遗物", relics);
-        allRelics.addAll(AbstractDungeon.player.relics);
+        KnowledgeRegistry.offerRelics(AbstractDungeon.player.relics);
 
         //总牌组
         ArrayList<String> masterDeck = new ArrayList<>();
@@ -157,7 +145,7 @@ public class AISlayer {
             masterDeck.add(card.name);
         }
         playerJson.put("总牌组", masterDeck);
-        allCards.addAll(AbstractDungeon.player.masterDeck.group);
+        KnowledgeRegistry.offerCards(AbstractDungeon.player.masterDeck.group);
 
         //手牌
         ArrayList<String> hand = new ArrayList<>();
@@ -191,7 +179,7 @@ public class AISlayer {
             hand.add("(序号: " + AbstractDungeon.player.hand.group.indexOf(card) + ")" + card.name + status);
         }
         playerJson.put("手牌", hand);
-        allCards.addAll(AbstractDungeon.player.hand.group);
+        KnowledgeRegistry.offerCards(AbstractDungeon.player.hand.group);
 
         //抽牌堆
         ArrayList<String> drawPile = new ArrayList<>();
@@ -199,7 +187,7 @@ public class AISlayer {
             drawPile.add(card.name);
         }
         playerJson.put("抽牌堆", drawPile);
-        allCards.addAll(AbstractDungeon.player.drawPile.group);
+        KnowledgeRegistry.offerCards(AbstractDungeon.player.drawPile.group);
 
         //弃牌堆
         ArrayList<String> discardPile = new ArrayList<>();
@@ -207,7 +195,7 @@ public class AISlayer {
             discardPile.add(card.name);
         }
         playerJson.put("弃牌堆", discardPile);
-        allCards.addAll(AbstractDungeon.player.discardPile.group);
+        KnowledgeRegistry.offerCards(AbstractDungeon.player.discardPile.group);
 
         //消耗牌堆
         ArrayList<String> exhaustPile = new ArrayList<>();
@@ -215,7 +203,7 @@ public class AISlayer {
             exhaustPile.add(card.name);
         }
         playerJson.put("消耗牌堆", exhaustPile);
-        allCards.addAll(AbstractDungeon.player.exhaustPile.group);
+        KnowledgeRegistry.offerCards(AbstractDungeon.player.exhaustPile.group);
 
         //效果
         JSONArray powersJson = new JSONArray();
@@ -480,43 +468,50 @@ public class AISlayer {
         }
     }
 
+    /**
+     * AI是否可用，每帧都会被补丁调用，只读取 refreshProviders 算好的结果
+     */
     public static boolean isAIStart () {
+        return aiStarted;
+    }
 
+    /**
+     * 按配置面板重新组建平台池，在初始化完成和每局开始时调用（配置面板只能在主菜单打开）
+     * @return AI是否可用
+     */
+    public static synchronized boolean refreshProviders() {
+        aiStarted = false;
+        LLMEndpoint platform1 = platformEndpoint(1);
+        LLMEndpoint platform2 = platformEndpoint(2);
+        LLMEndpoint other;
         if (ConfigPanel.selectedPlatform_1) {
-            AISlayer.apiKey = ConfigPanel.apiKey_1;
-            if (ConfigPanel.handleApiUrl) {
-                AISlayer.apiUrl = handleApiUrl(ConfigPanel.apiUrl_1);
-            } else {
-                AISlayer.apiUrl = ConfigPanel.apiUrl_1;
-            }
-            if (ConfigPanel.selectedModel_1_1) {
-                AISlayer.model = ConfigPanel.model_1_1;
-            } else if (ConfigPanel.selectedModel_1_2) {
-                AISlayer.model = ConfigPanel.model_1_2;
-            } else {
-                return false;
-            }
+            primaryEndpoint = platform1;
+            other = platform2;
         } else if (ConfigPanel.selectedPlatform_2) {
-            AISlayer.apiKey = ConfigPanel.apiKey_2;
-            if (ConfigPanel.handleApiUrl) {
-                AISlayer.apiUrl = handleApiUrl(ConfigPanel.apiUrl_2);
-            } else {
-                AISlayer.apiUrl = ConfigPanel.apiUrl_2;
-            }
-            if (ConfigPanel.selectedModel_2_1) {
-                AISlayer.model = ConfigPanel.model_2_1;
-            } else if (ConfigPanel.selectedModel_2_2) {
-                AISlayer.model = ConfigPanel.model_2_2;
-            } else {
-                return false;
-            }
+            primaryEndpoint = platform2;
+            other = platform1;
         } else {
             return false;
         }
+        if (primaryEndpoint == null) {
+            return false;
+        }
+        // 选中的平台排在最前，另一个平台（启用了模型时）和额外平台一起参与路由
+        List<LLMEndpoint> providers = new ArrayList<>();
+        providers.add(primaryEndpoint);
+        if (other != null) {
+            providers.add(other);
+        }
+        providers.addAll(extraEndpoints());
+        LLMRouter.setProviders(providers);
+        AISlayer.apiKey = primaryEndpoint.apiKey;
+        AISlayer.apiUrl = primaryEndpoint.apiUrl;
+        AISlayer.model = primaryEndpoint.model;
         
         // 初始化语音配置
         initializeVoiceSettings();
         
+        aiStarted = true;
         return true;
     }
     
@@ -540,6 +535,49 @@ public class AISlayer {
         }
     }
 
+    /**
+     * 读取平台配置
+     * @param platform 平台序号（1或2）
+     * @return 平台配置，没有启用模型时返回null
+     */
+    private static LLMEndpoint platformEndpoint(int platform) {
+        String key = platform == 1 ? ConfigPanel.apiKey_1 : ConfigPanel.apiKey_2;
+        String url = platform == 1 ? ConfigPanel.apiUrl_1 : ConfigPanel.apiUrl_2;
+        String model;
+        if (platform == 1 ? ConfigPanel.selectedModel_1_1 : ConfigPanel.selectedModel_2_1) {
+            model = platform == 1 ? ConfigPanel.model_1_1 : ConfigPanel.model_2_1;
+        } else if (platform == 1 ? ConfigPanel.selectedModel_1_2 : ConfigPanel.selectedModel_2_2) {
+            model = platform == 1 ? ConfigPanel.model_1_2 : ConfigPanel.model_2_2;
+        } else {
+            return null;
+        }
+        if (ConfigPanel.handleApiUrl) {
+            url = handleApiUrl(url);
+        }
+        return LLMEndpoint.of("平台" + platform, url, key, model);
+    }
+
+    /**
+     * 读取 performance.properties 中配置的额外平台（provider.1.url / key / model，序号从1开始连续编号）
+     * @return 额外平台列表
+     */
+    private static List<LLMEndpoint> extraEndpoints() {
+        List<LLMEndpoint> endpoints = new ArrayList<>();
+        for (int i = 1; ; i++) {
+            String url = PerformanceConfig.getString("provider." + i + ".url", "");
+            String model = PerformanceConfig.getString("provider." + i + ".model", "");
+            if (url.isEmpty() || model.isEmpty()) {
+                break;
+            }
+            if (ConfigPanel.handleApiUrl) {
+                url = handleApiUrl(url);
+            }
+            String key = PerformanceConfig.getString("provider." + i + ".key", "");
+            endpoints.add(LLMEndpoint.of("额外平台" + i, url, key, model));
+        }
+        return endpoints;
+    }
+
     private static String handleApiUrl(String apiUrl) {
         if (apiUrl.endsWith("/")) {
             apiUrl = apiUrl.substring(0, apiUrl.length() - 1);
@@ -557,122 +595,6 @@ public class AISlayer {
         return apiUrl;
     }
 
-    public static JSONObject mapPathsToString(ArrayList<ArrayList<MapRoomNode>> mapPaths) {
-        JSONObject mapPathsJson = new JSONObject();
-        for (ArrayList<MapRoomNode> path : mapPaths) {
-            ArrayList<String> pathString = new ArrayList<>();
-            for (MapRoomNode node : path) {
-                String nodeSymbol = node.room.getMapSymbol();
-                switch (nodeSymbol) {
-                    case "M":
-                        if (node.hasEmeraldKey) {
-                            pathString.add("怪物(绿宝石钥匙)");
-                        } else {
-                            pathString.add("怪物");
-                        }
-                        break;
-                    case "B":
-                        pathString.add("Boss");
-                        break;
-                    case "E":
-                        if (node.hasEmeraldKey) {
-                            pathString.add("精英(绿宝石钥匙)");
-                        } else {
-                            pathString.add("精英");
-                        }
-                        break;
-                    case "T":
-                        pathString.add("宝箱");
-                        break;
-                    case "$":
-                        pathString.add("商店");
-                        break;
-                    case "?":
-                        pathString.add("事件");
-                        break;
-                    case "R":
-                        pathString.add("火堆");
-                        break;
-                    default:
-                        pathString.add(nodeSymbol);
-                        break;
-                }
-            }
-            mapPathsJson.put("路线" + mapPaths.indexOf(path), pathString);
-        }
-        return mapPathsJson;
-    }
-
-    public static ArrayList<ArrayList<MapRoomNode>> getMapPaths(MapRoomNode root) {
-
-        ArrayList<ArrayList<MapRoomNode>> MapPaths = new ArrayList<>();
-
-        if (root.x == -1 || root.y == -1) {
-            ArrayList<MapRoomNode> firstMapPaths = getFirstMapPaths();
-            for (MapRoomNode node : firstMapPaths) {
-                root.addEdge(getEdge(node));
-            }
-        }
-
-        for (MapEdge edge : root.getEdges()) {
-            MapRoomNode mapNode = getMapNode(edge);
-            if (mapNode != null) {
-                ArrayList<ArrayList<MapRoomNode>> subPaths = getMapPaths(mapNode);
-                for (ArrayList<MapRoomNode> subPath : subPaths) {
-                    if (root != AbstractDungeon.getCurrMapNode()) {
-                        subPath.add(0, root);
-                    }
-                    MapPaths.add(subPath);
-                }
-            } else {
-                ArrayList<MapRoomNode> path = new ArrayList<>();
-                if (root != AbstractDungeon.getCurrMapNode()) {
-                    path.add(0, root);
-                }
-                MapRoomNode bossMapNode = new MapRoomNode(-1, 15);
-                bossMapNode.room = new MonsterRoomBoss();
-                bossMapNode.hb = AbstractDungeon.dungeonMapScreen.map.bossHb;
-                path.add(bossMapNode);
-                MapPaths.add(path);
-            }
-        }
-
-        return MapPaths;
-    }
-
-    private static ArrayList<MapRoomNode> getFirstMapPaths() {
-        ArrayList<MapRoomNode> firstMapPaths = new ArrayList<>();
-        ArrayList<MapRoomNode> allMapNodes = getAllMapNodes();
-        for (MapRoomNode node : allMapNodes) {
-            if (node.y == 0) {
-                firstMapPaths.add(node);
-            }
-        }
-        return firstMapPaths;
-    }
-
-    private static MapRoomNode getMapNode(MapEdge edge) {
-        ArrayList<MapRoomNode> allMapNodes = getAllMapNodes();
-        for (MapRoomNode node : allMapNodes) {
-            if (node.x == edge.dstX && node.y == edge.dstY) {
-                return node;
-            }
-        }
-        return null;
-    }
-
-    private static MapEdge getEdge(MapRoomNode node) {
-        return new MapEdge(0, 0, node.x, node.y);
-    }
-
-    private static ArrayList<MapRoomNode> getAllMapNodes() {
-        ArrayList<MapRoomNode> allMapNodes = new ArrayList<>();
-        for (ArrayList<MapRoomNode> raws : AbstractDungeon.map) {
-            allMapNodes.addAll(raws);
-        }
-        return allMapNodes;
-    }
-
     /**
      * 检查是否应该触发解说（基于冷却时间和配置）
      * @return 是否应该触发解说
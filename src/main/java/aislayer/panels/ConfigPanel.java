@@ -32,6 +32,8 @@ public class ConfigPanel extends EasyConfigPanel {
 
     public static String language = "中文";
     public static boolean handleApiUrl = true;
+    public static boolean decisionStreaming = true; // AI决策是否流式接收（参数完整即执行动作）
+    public static boolean hedgeRequests = false; // 对冲请求：主平台迟迟没有响应时，同时向另一个平台发送同样的请求，先到先用
 
     // 解说相关配置
     public static boolean commentaryEnabled = true;
@@ -39,6 +41,7 @@ public class ConfigPanel extends EasyConfigPanel {
     public static String commentaryStyle = "幽默";
     public static boolean showCommentaryHistory = false;
     public static int commentaryTimeout = 10; // API调用超时时间（秒）
+    public static boolean commentaryStreaming = true; // 是否流式接收解说（边生成边显示）
     
     // 新增解说增强配置
     public static boolean commentaryByCards = true; // 解说模式：true=按牌数解说，false=回合结束解说
@@ -1,8 +1,8 @@
 package aislayer.patchs;
 
-import aislayer.AISlayer;
 import aislayer.panels.ConfigPanel;
 import aislayer.utils.AIUtils;
+import aislayer.utils.RunKnowledge;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePostfixPatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePrefixPatch;
@@ -13,7 +13,6 @@ import com.megacrit.cardcrawl.rooms.AbstractRoom;
 import com.megacrit.cardcrawl.saveAndContinue.SaveFile;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.json.JSONArray;
 import org.json.JSONObject;
 
 import static aislayer.AISlayer.*;
@@ -25,16 +24,7 @@ public class EnterRoomPatch {
 
     private static void preEnter() {
         if (isAIStart()) {
-            AISlayer.knownCards.clear();
-            AISlayer.knownPotions.clear();
-            AISlayer.knownRelics.clear();
-            AISlayer.knownKeywords.clear();
-            AISlayer.allDescriptions.clear();
-            AISlayer.allCards.clear();
-            AISlayer.allPotions.clear();
-            AISlayer.allRelics.clear();
-
-            AIUtils.messagesArray = new JSONArray();
+            RunKnowledge.onEnterRoom();
         }
     }
 
@@ -1,6 +1,7 @@
 package aislayer.patchs;
 
 import aislayer.utils.AIUtils;
+import aislayer.utils.GameThreadQueue;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePostfixPatch;
 import com.megacrit.cardcrawl.helpers.Hitbox;
@@ -19,6 +20,9 @@ public class LockHoveredPatch {
 
     @SpirePostfixPatch
     public static void Postfix() {
+        // 先执行AI线程提交的操作，本帧新锁定的点击也能马上生效
+        GameThreadQueue.drain();
+
         Hitbox hb = AIUtils.lockedHoveredHitbox;
         if (hb != null) {
             if (hb.clicked && lockedTime++ < 5) {
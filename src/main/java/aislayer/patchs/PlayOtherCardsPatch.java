@@ -2,6 +2,7 @@ package aislayer.patchs;
 
 import aislayer.AISlayer;
 import aislayer.utils.AIUtils;
+import aislayer.utils.TurnPlanExecutor;
 import com.evacipated.cardcrawl.modthespire.lib.SpireInsertPatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
 import com.megacrit.cardcrawl.actions.AbstractGameAction;
@@ -28,8 +29,15 @@ public class PlayOtherCardsPatch {
                         && isAIStart()
         ) {
 
+            // 有回合计划时等上一步的动作执行完再按计划执行下一步，计划结束或与局面不符时才重新询问AI
+            if (TurnPlanExecutor.hasPlan()) {
+                if (!AbstractDungeon.actionManager.actions.isEmpty() || TurnPlanExecutor.step()) {
+                    return;
+                }
+            }
+
             // 禁用AI自动操作，只保留解说功能
-            // String todo = "现在你可以选择使用药水、打出手牌、结束回合";
+            // String todo = "现在你可以规划本回合的操作，或者选择使用药水、打出手牌、结束回合";
             // AIUtils.action(getInfo(todo));
 
         }
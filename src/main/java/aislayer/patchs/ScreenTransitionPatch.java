@@ -0,0 +1,19 @@
+package aislayer.patchs;
+
+import aislayer.utils.ScreenWatcher;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
+import com.evacipated.cardcrawl.modthespire.lib.SpirePostfixPatch;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+
+@SpirePatch(
+        clz = AbstractDungeon.class,
+        method = "update"
+)
+public class ScreenTransitionPatch {
+
+    @SpirePostfixPatch
+    public static void Postfix() {
+        // 各界面本帧的更新都已完成，通知等待界面切换的AI线程
+        ScreenWatcher.onFrame();
+    }
+}
@@ -1,6 +1,7 @@
 package aislayer.patchs;
 
 import aislayer.utils.AIUtils;
+import aislayer.utils.KnowledgeRegistry;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePostfixPatch;
 import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
@@ -17,7 +18,7 @@ public class SelectBossRelicPatch {
     public static void Postfix() {
         if (isAIStart()) {
             String todo = "选择一个遗物(可以不选): " + AbstractDungeon.bossRelicScreen.relics;
-            allRelics.addAll(AbstractDungeon.bossRelicScreen.relics);
+            KnowledgeRegistry.offerRelics(AbstractDungeon.bossRelicScreen.relics);
             // 禁用AI自动操作，只保留解说功能
             // AIUtils.action(getInfo(todo));
         }
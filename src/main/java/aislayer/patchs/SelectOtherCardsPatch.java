@@ -1,6 +1,7 @@
 package aislayer.patchs;
 
 import aislayer.utils.AIUtils;
+import aislayer.utils.KnowledgeRegistry;
 import com.evacipated.cardcrawl.modthespire.lib.SpireInsertPatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
 import com.megacrit.cardcrawl.cards.CardGroup;
@@ -30,7 +31,7 @@ public class SelectOtherCardsPatch {
     public static void Insert(CardGroup group ,String tipMsg) {
         if (isAIStart()) {
             String todo = tipMsg.replace("。", "") + ": " + group.group;
-            allCards.addAll(group.group);
+            KnowledgeRegistry.offerCards(group.group);
             // 禁用AI自动操作，只保留解说功能
             // AIUtils.action(getInfo(todo));
         }
@@ -1,6 +1,7 @@
 package aislayer.patchs;
 
 import aislayer.utils.AIUtils;
+import aislayer.utils.KnowledgeRegistry;
 import com.evacipated.cardcrawl.modthespire.lib.SpireInsertPatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
 import com.megacrit.cardcrawl.rewards.RewardItem;
@@ -20,7 +21,7 @@ public class SelectRewardCardsPatch {
     public static void Insert(RewardItem rItem) {
         if (isAIStart()) {
             String todo = rItem.text+ "(可以不选)" + ": " + rItem.cards;
-            allCards.addAll(rItem.cards);
+            KnowledgeRegistry.offerCards(rItem.cards);
             // 禁用AI自动操作，只保留解说功能
             // AIUtils.action(getInfo(todo));
         }
@@ -1,6 +1,7 @@
 package aislayer.patchs;
 
 import aislayer.utils.AIUtils;
+import aislayer.utils.KnowledgeRegistry;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePostfixPatch;
 import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
@@ -19,7 +20,7 @@ public class SelectRewardPatch {
             ArrayList<RewardItem> rewards = AbstractDungeon.combatRewardScreen.rewards;
             for (RewardItem reward : rewards) {
                 if (reward.type == RewardItem.RewardType.CARD) {
-                    allCards.addAll(reward.cards);
+                    KnowledgeRegistry.offerCards(reward.cards);
                     todoArray.add(reward.text + reward.cards + "(现在不能直接选牌，必须选择此项后进入选牌界面)");
                 } else if (reward.relicLink != null) {
                     todoArray.add(reward.text + "(选择这个后，不能选择" + reward.relicLink.text + ")");
@@ -28,10 +29,10 @@ public class SelectRewardPatch {
                 }
                 switch (reward.type) {
                     case RELIC:
-                        allRelics.add(reward.relic);
+                        KnowledgeRegistry.offerRelic(reward.relic);
                         break;
                     case POTION:
-                        allPotions.add(reward.potion);
+                        KnowledgeRegistry.offerPotion(reward.potion);
                         break;
                     default:
                         break;
@@ -1,17 +1,15 @@
 package aislayer.patchs;
 
 import aislayer.utils.AIUtils;
+import aislayer.utils.MapRouteEvaluator;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpirePostfixPatch;
 import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
-import com.megacrit.cardcrawl.map.MapRoomNode;
 import com.megacrit.cardcrawl.rooms.AbstractRoom;
 import com.megacrit.cardcrawl.screens.DungeonMapScreen;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.ArrayList;
-
 import static aislayer.AISlayer.*;
 
 @SpirePatch(
@@ -28,11 +26,12 @@ public class SelectRoomPatch {
                         || AbstractDungeon.getCurrRoom().phase == AbstractRoom.RoomPhase.COMPLETE
         ) {
             if (isAIStart()) {
-                ArrayList<ArrayList<MapRoomNode>> mapPaths = getMapPaths(AbstractDungeon.getCurrMapNode());
+                // 本地评估路线，只保留评分最高的几条
+                MapRouteEvaluator.Plan plan = MapRouteEvaluator.evaluate(AbstractDungeon.getCurrMapNode());
 
                 logger.info("当前房间: {}", AbstractDungeon.getCurrMapNode());
                 // 禁用AI自动操作，只保留解说功能
-                // String todo = "从以下给出的若干路线中选择一条接下来你要走的路线(如果只有一条那就选那唯一的一条): " + mapPathsToString(mapPaths);
+                // String todo = "从以下给出的若干推荐路线中选择一条接下来你要走的路线(如果只有一条那就选那唯一的一条): " + plan.toJson();
                 // AIUtils.action(getInfo(todo));
             }
         }
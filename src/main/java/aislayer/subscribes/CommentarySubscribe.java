@@ -1,7 +1,15 @@
 package aislayer.subscribes;
 
 import aislayer.ui.CommentaryDisplay;
+import aislayer.utils.AIExecutor;
+import aislayer.utils.AIUtils;
 import aislayer.utils.CommentaryUtils;
+import aislayer.utils.GameThreadQueue;
+import aislayer.utils.HedgedRequest;
+import aislayer.utils.KnowledgeRegistry;
+import aislayer.utils.LLMClient;
+import aislayer.utils.LLMRouter;
+import aislayer.utils.TokenUsageStats;
 import com.badlogic.gdx.Gdx;
 import com.evacipated.cardcrawl.modthespire.lib.SpireInitializer;
 import com.megacrit.cardcrawl.core.Settings;
@@ -156,6 +164,14 @@ public class CommentarySubscribe {
         status.append("解说系统状态: 已初始化\n");
         status.append("解说功能: ").append(CommentaryUtils.isCommentarySystemAvailable() ? "可用" : "不可用").append("\n");
         status.append(CommentaryUtils.getCommentaryStats()).append("\n");
+        status.append(LLMClient.getStats()).append("\n");
+        status.append(HedgedRequest.getStats()).append("\n");
+        status.append(GameThreadQueue.getStats()).append("\n");
+        status.append(LLMRouter.getStats()).append("\n");
+        status.append(TokenUsageStats.getStats()).append("\n");
+        status.append(AIExecutor.getStats()).append("\n");
+        status.append(AIUtils.conversation.getStats()).append("\n");
+        status.append(KnowledgeRegistry.getStats()).append("\n");
         status.append(commentaryDisplay.getStats());
         
         return status.toString();
@@ -2,10 +2,15 @@ package aislayer.subscribes;
 
 import aislayer.AISlayer;
 import aislayer.panels.ConfigPanel;
+import aislayer.utils.LLMClient;
 import basemod.BaseMod;
 import basemod.interfaces.OnStartBattleSubscriber;
 import basemod.interfaces.PostInitializeSubscriber;
+import basemod.interfaces.PostUpdateSubscriber;
+import basemod.interfaces.RenderSubscriber;
+import basemod.interfaces.StartGameSubscriber;
 import com.badlogic.gdx.graphics.Texture;
+import com.badlogic.gdx.graphics.g2d.SpriteBatch;
 import com.evacipated.cardcrawl.modthespire.lib.SpireInitializer;
 import com.megacrit.cardcrawl.helpers.ImageMaster;
 import com.megacrit.cardcrawl.rooms.AbstractRoom;
@@ -13,7 +18,10 @@ import com.megacrit.cardcrawl.rooms.AbstractRoom;
 @SpireInitializer
 public class Subscribe implements
         OnStartBattleSubscriber,
-        PostInitializeSubscriber {
+        PostInitializeSubscriber,
+        PostUpdateSubscriber,
+        RenderSubscriber,
+        StartGameSubscriber {
 
     public Subscribe() {
         BaseMod.subscribe(this);
@@ -36,5 +44,26 @@ public class Subscribe implements
     public void receivePostInitialize() {
         Texture badgeTexture = ImageMaster.loadImage("aislayerResources/images/badge.png");
         BaseMod.registerModBadge(badgeTexture, "AI爬塔解说", "河童", "让AI来解说你的爬塔过程!", new ConfigPanel());
+
+        // 配置加载完成后预热LLM连接，首条解说不再承担握手开销
+        if (AISlayer.refreshProviders()) {
+            LLMClient.warmUp(AISlayer.apiUrl);
+        }
+    }
+
+    @Override
+    public void receiveStartGame() {
+        // 配置面板只能在主菜单修改，每局开始时按最新配置重新组建平台池
+        AISlayer.refreshProviders();
+    }
+
+    @Override
+    public void receivePostUpdate() {
+        CommentarySubscribe.update();
+    }
+
+    @Override
+    public void receiveRender(SpriteBatch sb) {
+        CommentarySubscribe.render(sb);
     }
 }
@@ -17,6 +17,7 @@ import java.util.ArrayList;
 
 /**
  * 解说显示系统，管理解说内容的显示和历史记录
+ * 只在游戏线程读写，AI线程通过 GameThreadQueue 提交修改
  */
 public class CommentaryDisplay {
     
@@ -28,9 +29,9 @@ public class CommentaryDisplay {
     
     // 显示相关
     private boolean isVisible = true;
-    private float displayTimer = 0.0f;
+    private volatile float displayTimer = 0.0f;
     private final float displayDuration = 4.0f; // 显示时长4秒
-    private String currentCommentary = "";
+    private volatile String currentCommentary = "";
     
     // UI位置和大小
     private float x, y, width, height;
@@ -86,6 +87,19 @@ public class CommentaryDisplay {
         addToHistory(commentary);
     }
     
+    /**
+     * 显示正在流式生成的解说，不写入历史记录
+     * @param partialCommentary 目前已收到的解说内容
+     */
+    public void showStreamingCommentary(String partialCommentary) {
+        if (partialCommentary == null || partialCommentary.isEmpty()) {
+            return;
+        }
+        
+        currentCommentary = partialCommentary;
+        displayTimer = displayDuration;
+    }
+    
     /**
      * 添加到历史记录
      * @param commentary 解说内容
@@ -0,0 +1,377 @@
+package aislayer.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AI异步执行层，替代各处直接 new Thread
+ * 决策和解说分别使用有界线程池，线程有名字、队列有上限、溢出有拒绝策略
+ * 解说按优先级出队（怪物介绍 > 行动解说 > 回合总结）。
+ * LLM平台的并发请求数受许可数限制，决策优先拿许可，并且总留一个许可给决策；
+ * 解说拿不到许可时不占着线程等待，而是稍后重新排队，等到截止时间仍未轮到的解说直接丢弃，不会拖慢下一个游戏动作
+ */
+public class AIExecutor {
+
+    public static final Logger logger = LogManager.getLogger(AIExecutor.class.getName());
+
+    private static final AtomicLong decisionRejected = new AtomicLong();
+    private static final AtomicLong decisionCoalesced = new AtomicLong();
+    private static final AtomicLong commentaryRejected = new AtomicLong();
+    private static final AtomicLong commentaryExpired = new AtomicLong();
+    private static final AtomicLong taskSequence = new AtomicLong();
+
+    private static final AtomicLong requestRejected = new AtomicLong();
+
+    private static final int QUEUE_SIZE = Math.max(1, PerformanceConfig.getInt("async.queue_size", 100));
+    private static final int COMMENTARY_QUEUE_SIZE = Math.max(1, PerformanceConfig.getInt("commentary.queue.max_size", 10));
+
+    // 同时向LLM平台发出的请求许可：决策排队等待许可时解说不能拿，解说最多用到 总数-1 个
+    private static final int REQUEST_PERMITS = Math.max(2, PerformanceConfig.getInt("router.max_concurrent_requests", 2));
+    private static final long COMMENTARY_RETRY_MS = 100;
+    private static final Object permitLock = new Object();
+    private static int permitsInUse = 0;
+    private static int commentaryPermits = 0;
+    private static int decisionsWaiting = 0;
+
+    // 每个许可最多对应主、备两路请求，另留一些给已取消但连接还没关掉的请求
+    private static final int REQUEST_THREADS = Math.max(2 * REQUEST_PERMITS,
+            PerformanceConfig.getInt("router.request_threads", 2 * REQUEST_PERMITS + 2));
+
+    // 提交决策、解说时的"检查队列长度 + 挤掉旧任务 + 入队"必须是一个原子操作
+    private static final Object decisionSubmitLock = new Object();
+    private static final Object commentarySubmitLock = new Object();
+
+    // AI决策线程池：游戏动作必须按顺序执行，所以只用一个线程
+    private static final ThreadPoolExecutor decisionExecutor = new ThreadPoolExecutor(
+            1, 1,
+            0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(QUEUE_SIZE),
+            namedThreadFactory("AI-Decision"),
+            (task, executor) -> {
+                // submitDecision 会先腾出位置，只有线程池关闭时才会走到这里
+                decisionRejected.incrementAndGet();
+                logger.warn("AI决策队列已满，丢弃请求（队列: {}）", executor.getQueue().size());
+            });
+
+    // 解说线程池：并发数受 commentary.concurrent.max_calls 限制，按优先级出队，排队长度受 commentary.queue.max_size 限制
+    private static final ThreadPoolExecutor commentaryExecutor = new ThreadPoolExecutor(
+            commentaryThreads(), commentaryThreads(),
+            0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(),
+            namedThreadFactory("AI-Commentary"));
+
+    // 对冲请求的各路HTTP请求：按需创建线程，不排队，超过上限直接拒绝（调用方把这一路记为失败）
+    private static final ThreadPoolExecutor requestExecutor = new ThreadPoolExecutor(
+            0, REQUEST_THREADS,
+            30L, TimeUnit.SECONDS,
+            new SynchronousQueue<>(),
+            namedThreadFactory("AI-Request"),
+            (task, executor) -> {
+                requestRejected.incrementAndGet();
+                logger.warn("LLM请求线程已满，拒绝请求（线程: {}）", executor.getPoolSize());
+                throw new RejectedExecutionException("LLM请求线程已满");
+            });
+
+    // 延时任务（解说队列轮换等）
+    private static final ScheduledThreadPoolExecutor scheduler =
+            new ScheduledThreadPoolExecutor(1, namedThreadFactory("AI-Scheduler"));
+
+    private static int commentaryThreads() {
+        int poolSize = Math.max(1, PerformanceConfig.getInt("async.thread_pool_size", 2));
+        int maxCalls = Math.max(1, PerformanceConfig.getInt("commentary.concurrent.max_calls", 1));
+        return Math.min(poolSize, maxCalls);
+    }
+
+    private static ThreadFactory namedThreadFactory(String prefix) {
+        AtomicInteger index = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + index.incrementAndGet());
+            // 守护线程，不阻止游戏退出
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * 带优先级和截止时间的解说任务
+     */
+    private static class PrioritizedTask implements Runnable, Comparable<PrioritizedTask> {
+        private final RequestPriority priority;
+        private final Runnable task;
+        private final Runnable onDrop;
+        private final long sequence;
+        private final long deadline;
+
+        PrioritizedTask(RequestPriority priority, Runnable task, Runnable onDrop) {
+            this.priority = priority;
+            this.task = wrap(task, priority.getDescription());
+            this.onDrop = wrap(onDrop, priority.getDescription() + "丢弃回调");
+            this.sequence = taskSequence.incrementAndGet();
+            this.deadline = priority.getDeadlineMillis() > 0
+                    ? System.currentTimeMillis() + priority.getDeadlineMillis()
+                    : Long.MAX_VALUE;
+        }
+
+        @Override
+        public void run() {
+            // 等到截止时间还没轮到就丢弃
+            if (System.currentTimeMillis() > deadline) {
+                commentaryExpired.incrementAndGet();
+                logger.info("{}请求已过期，丢弃", priority.getDescription());
+                onDrop.run();
+                return;
+            }
+            // 拿不到许可（决策在等或许可用完）时放回线程，稍后重新排队
+            if (!tryAcquireCommentaryPermit()) {
+                scheduler.schedule(() -> requeue(this), COMMENTARY_RETRY_MS, TimeUnit.MILLISECONDS);
+                return;
+            }
+            try {
+                task.run();
+            } finally {
+                releaseCommentaryPermit();
+            }
+        }
+
+        @Override
+        public int compareTo(PrioritizedTask other) {
+            if (priority != other.priority) {
+                return Integer.compare(priority.getValue(), other.priority.getValue());
+            }
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * 提交AI决策任务
+     * @param task 任务
+     */
+    public static void submitDecision(Runnable task) {
+        Runnable wrapped = wrap(task, "AI决策");
+        Runnable decision = () -> {
+            if (!acquireDecisionPermit()) {
+                return;
+            }
+            try {
+                wrapped.run();
+            } finally {
+                releasePermit();
+            }
+        };
+        synchronized (decisionSubmitLock) {
+            // 新决策不能丢，否则没人重新询问AI，自动操作会停住；
+            // 队列满时丢掉最旧的排队决策，它基于的局面早已过时，以最新局面为准
+            BlockingQueue<Runnable> queue = decisionExecutor.getQueue();
+            if (queue.remainingCapacity() == 0 && queue.poll() != null) {
+                decisionCoalesced.incrementAndGet();
+                logger.warn("AI决策队列已满，丢弃最旧的排队决策（队列: {}）", queue.size());
+            }
+            decisionExecutor.execute(decision);
+        }
+    }
+
+    /**
+     * 决策线程获取请求许可，总有一个许可留给决策，最多等正在进行的决策结束
+     * @return 被中断时返回false
+     */
+    private static boolean acquireDecisionPermit() {
+        synchronized (permitLock) {
+            decisionsWaiting++;
+            try {
+                while (permitsInUse >= REQUEST_PERMITS) {
+                    permitLock.wait();
+                }
+                permitsInUse++;
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } finally {
+                decisionsWaiting--;
+            }
+        }
+    }
+
+    /**
+     * 解说尝试获取请求许可，不等待
+     */
+    private static boolean tryAcquireCommentaryPermit() {
+        synchronized (permitLock) {
+            if (decisionsWaiting > 0 || commentaryPermits >= REQUEST_PERMITS - 1) {
+                return false;
+            }
+            permitsInUse++;
+            commentaryPermits++;
+            return true;
+        }
+    }
+
+    private static void releaseCommentaryPermit() {
+        synchronized (permitLock) {
+            commentaryPermits--;
+        }
+        releasePermit();
+    }
+
+    private static void releasePermit() {
+        synchronized (permitLock) {
+            permitsInUse--;
+            permitLock.notifyAll();
+        }
+    }
+
+    /**
+     * 拿不到许可的解说重新排队，排队时仍按优先级出队
+     */
+    private static void requeue(PrioritizedTask task) {
+        synchronized (commentarySubmitLock) {
+            enqueueCommentary(task);
+        }
+    }
+
+    /**
+     * 提交解说任务
+     * @param priority 优先级
+     * @param task 任务
+     */
+    public static void submitCommentary(RequestPriority priority, Runnable task) {
+        submitCommentary(priority, task, () -> { });
+    }
+
+    /**
+     * 提交解说任务
+     * @param priority 优先级
+     * @param task 任务
+     * @param onDrop 任务没有执行就被丢弃（队列满被挤掉、被拒绝、过期）时的回调，用于释放调用方登记的状态
+     */
+    public static void submitCommentary(RequestPriority priority, Runnable task, Runnable onDrop) {
+        PrioritizedTask prioritized = new PrioritizedTask(priority, task, onDrop);
+        synchronized (commentarySubmitLock) {
+            enqueueCommentary(prioritized);
+        }
+    }
+
+    /**
+     * 解说入队，队列满时按优先级挤掉一个任务；调用方持有 commentarySubmitLock
+     */
+    private static void enqueueCommentary(PrioritizedTask prioritized) {
+        RequestPriority priority = prioritized.priority;
+        PriorityBlockingQueue<Runnable> queue = (PriorityBlockingQueue<Runnable>) commentaryExecutor.getQueue();
+        if (queue.size() >= COMMENTARY_QUEUE_SIZE) {
+            // 队列满时丢弃优先级最低、最新的那个任务
+            Runnable lowest = null;
+            for (Runnable queued : queue) {
+                if (lowest == null || ((PrioritizedTask) queued).compareTo((PrioritizedTask) lowest) > 0) {
+                    lowest = queued;
+                }
+            }
+            commentaryRejected.incrementAndGet();
+            if (lowest != null && ((PrioritizedTask) lowest).priority.getValue() > priority.getValue()) {
+                if (queue.remove(lowest)) {
+                    ((PrioritizedTask) lowest).onDrop.run();
+                }
+                logger.info("解说队列已满，丢弃一条{}", ((PrioritizedTask) lowest).priority.getDescription());
+            } else {
+                logger.info("解说队列已满，丢弃新的{}", priority.getDescription());
+                prioritized.onDrop.run();
+                return;
+            }
+        }
+        try {
+            commentaryExecutor.execute(prioritized);
+        } catch (RejectedExecutionException e) {
+            commentaryRejected.incrementAndGet();
+            logger.warn("解说任务被拒绝: {}", priority.getDescription());
+            prioritized.onDrop.run();
+        }
+    }
+
+    /**
+     * 在独立线程上执行一路HTTP请求（调用方线程负责等待结果）
+     * @param task 任务
+     * @throws RejectedExecutionException 请求线程已满
+     */
+    public static void submitRequest(Runnable task) {
+        requestExecutor.execute(wrap(task, "LLM请求"));
+    }
+
+    /**
+     * 延时执行任务
+     * @param task 任务
+     * @param delayMillis 延时（毫秒）
+     */
+    public static void schedule(Runnable task, long delayMillis) {
+        scheduler.schedule(wrap(task, "延时"), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 捕获任务异常，避免线程池里的异常被悄悄吞掉
+     */
+    private static Runnable wrap(Runnable task, String name) {
+        return () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                logger.error(name + "任务执行失败", t);
+            }
+        };
+    }
+
+    /**
+     * 获取决策队列深度
+     */
+    public static int getDecisionQueueDepth() {
+        return decisionExecutor.getQueue().size();
+    }
+
+    /**
+     * 获取解说队列深度
+     */
+    public static int getCommentaryQueueDepth() {
+        return commentaryExecutor.getQueue().size();
+    }
+
+    /**
+     * 获取被拒绝的任务数
+     */
+    public static long getRejectedCount() {
+        return decisionRejected.get() + commentaryRejected.get() + requestRejected.get();
+    }
+
+    /**
+     * 获取执行层统计信息
+     * @return 统计信息
+     */
+    public static String getStats() {
+        int inUse;
+        synchronized (permitLock) {
+            inUse = permitsInUse;
+        }
+        return String.format("决策队列: %d(执行中%d, 拒绝%d, 合并%d), 解说队列: %d(执行中%d, 拒绝%d, 过期%d), 请求许可: %d/%d, 请求线程: %d/%d(拒绝%d)",
+                decisionExecutor.getQueue().size(), decisionExecutor.getActiveCount(), decisionRejected.get(),
+                decisionCoalesced.get(), commentaryExecutor.getQueue().size(), commentaryExecutor.getActiveCount(), commentaryRejected.get(),
+                commentaryExpired.get(), inUse, REQUEST_PERMITS, requestExecutor.getActiveCount(), REQUEST_THREADS, requestRejected.get());
+    }
+
+    /**
+     * 关闭执行层
+     */
+    public static void shutdown() {
+        decisionExecutor.shutdownNow();
+        commentaryExecutor.shutdownNow();
+        requestExecutor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+}
@@ -1,16 +1,16 @@
 package aislayer.utils;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
 import java.lang.reflect.Field;
-import java.net.HttpURLConnection;
 import java.net.SocketTimeoutException;
-import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -24,7 +24,6 @@ import com.megacrit.cardcrawl.actions.common.LoseHPAction;
 import com.megacrit.cardcrawl.cards.AbstractCard;
 import com.megacrit.cardcrawl.core.AbstractCreature;
 import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
-import com.megacrit.cardcrawl.helpers.GameDictionary;
 import com.megacrit.cardcrawl.helpers.Hitbox;
 import com.megacrit.cardcrawl.helpers.input.InputHelper;
 import com.megacrit.cardcrawl.map.MapRoomNode;
@@ -38,20 +37,9 @@ import com.megacrit.cardcrawl.ui.campfire.AbstractCampfireOption;
 import com.megacrit.cardcrawl.ui.panels.EnergyPanel;
 import com.megacrit.cardcrawl.vfx.combat.LightBulbEffect;
 
-import static aislayer.AISlayer.allCards;
-import static aislayer.AISlayer.allDescriptions;
-import static aislayer.AISlayer.allPotions;
-import static aislayer.AISlayer.allRelics;
-import static aislayer.AISlayer.apiKey;
-import static aislayer.AISlayer.apiUrl;
 import static aislayer.AISlayer.getCardInfo;
-import static aislayer.AISlayer.getMapPaths;
 import static aislayer.AISlayer.handleDescription;
-import static aislayer.AISlayer.knownCards;
-import static aislayer.AISlayer.knownKeywords;
-import static aislayer.AISlayer.knownPotions;
-import static aislayer.AISlayer.knownRelics;
-import static aislayer.AISlayer.model;
+import aislayer.AISlayer;
 import aislayer.actions.AIEndTurnAction;
 import aislayer.actions.AIThinkAction;
 import aislayer.actions.AIUseCardAction;
@@ -62,37 +50,51 @@ public class AIUtils {
 
     public static final Logger logger = LogManager.getLogger(AIUtils.class.getName());
 
-    public static JSONArray messagesArray = new JSONArray();
+    // AI决策的对话记忆（知识提示 + 旧对话摘要 + 最近几轮对话）
+    public static final ConversationMemory conversation = new ConversationMemory();
+
+    // 连续决策之间只发送状态变化，"现在你可以做的事"每次都发送
+    public static final StateDiffEncoder stateEncoder = new StateDiffEncoder("现在你可以做的事");
 
     public static Hitbox lockedHoveredHitbox = null;
 
+    // 决策请求读取超时的上限（毫秒），样本不足时直接使用
+    private static final int DECISION_TIMEOUT_MS = PerformanceConfig.getInt("network.decision_timeout_ms", 60000);
+
+    static {
+        ToolRegistry.register(funcPlayCard());
+        ToolRegistry.register(funcPlanTurn());
+        ToolRegistry.register(funcEndTurn());
+        ToolRegistry.register(funcUsePotion());
+        ToolRegistry.register(funcSelect());
+        ToolRegistry.register(funcBoolean());
+    }
+
     public static void action (JSONObject info) {
 
-        Thread thread = new Thread(() -> {
+        AIExecutor.submitDecision(() -> {
             
             addToBot(new AIThinkAction());
 
-            JSONObject tool = AIUtils.getTool(apiKey, apiUrl, model, stringify(info));
+            // 流式模式下，动作参数一完整就先执行（思考特效排在动作前面）；
+            // 理由要等整段生成完，有意在动作之后才显示，这正是提前执行省下的时间
+            AtomicBoolean dispatched = new AtomicBoolean(false);
+            ToolCallAssembler.Listener listener = (id, name, arguments) -> {
+                logger.info("动作参数已完整，提前执行: {} {}", name, arguments);
+                dispatched.set(true);
+                // 执行时就记录动作，之后流即使中断，对话里也有这一步
+                recordToolCall(id, name, arguments);
+                addToBot(new VFXAction(new LightBulbEffect(AbstractDungeon.player.hb), 0.5F));
+                executeAction(name, arguments);
+            };
+
+            JSONObject tool = AIUtils.getTool(info, listener);
 
             if (tool.has("error")) {
                 logger.info(tool.getString("error"));
                 return;
             }
 
-            JSONObject message = new JSONObject();
-            JSONArray tool_calls = new JSONArray();
-            tool_calls.put(tool);
-            message.put("role", "assistant");
-            message.put("tool_calls", tool_calls);
-            messagesArray.put(message);
-
-            JSONObject response = new JSONObject();
-            response.put("tool_call_id", tool.getString("id"));
-            response.put("role", "tool");
-            response.put("name", tool.getJSONObject("function").getString("name"));
-            response.put("content", tool.getJSONObject("function").getString("arguments"));
-            messagesArray.put(response);
-
             JSONObject function = tool.getJSONObject("function");
 
             logger.info(function);
@@ -100,21 +102,68 @@ public class AIUtils {
             String functionName = function.getString("name");
             JSONObject arguments = new JSONObject(function.getString("arguments"));
 
-            addToBot(new VFXAction(new LightBulbEffect(AbstractDungeon.player.hb), 0.5F));
+            if (!dispatched.get()) {
+                recordToolCall(tool.getString("id"), functionName, arguments);
+                addToBot(new VFXAction(new LightBulbEffect(AbstractDungeon.player.hb), 0.5F));
+            }
 
-            addToBot(new TalkAction(true, arguments.getString("reason"), 4.0F, 4.0F));
+            String reason = arguments.optString("reason", "");
+            if (!reason.isEmpty()) {
+                addToBot(new TalkAction(true, reason, 4.0F, 4.0F));
+            }
 
-            executeAction(functionName, arguments);
+            if (!dispatched.get()) {
+                executeAction(functionName, arguments);
+            }
         });
-        thread.start();
     }
 
     /**
-     * 执行AI决策的动作
+     * 把一次工具调用记入对话
+     * @param id 工具调用ID
+     * @param functionName 动作名称
+     * @param arguments 动作参数（提前执行时只有已完整的字段）
+     */
+    private static void recordToolCall(String id, String functionName, JSONObject arguments) {
+        JSONObject function = new JSONObject();
+        function.put("name", functionName);
+        function.put("arguments", arguments.toString());
+        JSONObject tool = new JSONObject();
+        tool.put("id", id);
+        tool.put("type", "function");
+        tool.put("function", function);
+
+        JSONObject message = new JSONObject();
+        JSONArray tool_calls = new JSONArray();
+        tool_calls.put(tool);
+        message.put("role", "assistant");
+        message.put("tool_calls", tool_calls);
+
+        JSONObject response = new JSONObject();
+        response.put("tool_call_id", id);
+        response.put("role", "tool");
+        response.put("name", functionName);
+        response.put("content", arguments.toString());
+
+        // 折叠进摘要时只保留动作本身，不保留理由
+        JSONObject actionArguments = new JSONObject(arguments.toString());
+        actionArguments.remove("reason");
+        conversation.addToolExchange(message, response, functionName + stringify(actionArguments));
+    }
+
+    /**
+     * 执行AI决策的动作：交给游戏线程执行，读取和修改游戏状态都不会和游戏线程竞争
      * @param functionName 动作名称
      * @param arguments 动作参数
      */
-    private static void executeAction(String functionName, JSONObject arguments) {
+    static void executeAction(String functionName, JSONObject arguments) {
+        GameThreadQueue.submit(() -> applyAction(functionName, arguments));
+    }
+
+    /**
+     * 在游戏线程上执行动作
+     */
+    private static void applyAction(String functionName, JSONObject arguments) {
         switch (functionName) {
             case "playCard":
                 int cardIndex = arguments.getInt("index");
@@ -132,6 +181,9 @@ public class AIUtils {
                 }
                 addToBot(new AIUseCardAction(card, cardTarget));
                 break;
+            case "planTurn":
+                TurnPlanExecutor.start(arguments.optJSONArray("steps"));
+                break;
             case "endTurn":
                 boolean suicide = arguments.getBoolean("suicide");
                 if (suicide) {
@@ -192,32 +244,12 @@ public class AIUtils {
                     }
                     pressProceedButton();
                 } else if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.COMBAT_REWARD) {
-                    ArrayList<RewardItem> rewards = new ArrayList<>(AbstractDungeon.combatRewardScreen.rewards);
-                    for (int i = 0; i < selectIndexes.length(); i++) {
-                        int selectIndex = selectIndexes.getInt(i);
-                        RewardItem selectedReward = rewards.get(selectIndex);
-                        selectedReward.hb.clicked = true;
-                        lockedHoveredHitbox = selectedReward.hb;
-                        int fuckNum = 0;
-                        while (true) {
-                            if (fuckNum > 10 && lockedHoveredHitbox == null) {
-                                break;
-                            } else {
-                                if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.COMBAT_REWARD) {
-                                    fuckNum++;
-                                } else {
-                                    fuckNum = 0;
-                                }
-                                logger.info("等待{}", AbstractDungeon.screen);
-                            }
-                        }
-                    }
-                    pressProceedButton();
+                    new RewardClaim(selectIndexes).advance();
                     break;
                 } else if (AbstractDungeon.screen == AbstractDungeon.CurrentScreen.MAP) {
-                    ArrayList<ArrayList<MapRoomNode>> mapPaths = getMapPaths(AbstractDungeon.getCurrMapNode());
-                    ArrayList<MapRoomNode> mapPath = mapPaths.get(selectIndexes.getInt(0));
-                    MapRoomNode mapNode = mapPath.get(0);
+                    // 序号对应推荐路线，走路线的第一个房间
+                    List<MapRouteEvaluator.Route> routes = MapRouteEvaluator.evaluate(AbstractDungeon.getCurrMapNode()).getRoutes();
+                    MapRoomNode mapNode = routes.get(selectIndexes.getInt(0)).firstNode();
                     mapNode.hb.clicked = true;
                     lockedHoveredHitbox = mapNode.hb;
                     AbstractDungeon.dungeonMapScreen.clicked = true;
@@ -261,36 +293,140 @@ public class AIUtils {
         }
     }
 
+    /**
+     * 依次领取选中的战斗奖励，最后点继续
+     * 每领一个奖励都等界面回到奖励界面并稳定后再领下一个（卡牌奖励会先打开选卡界面，选卡还要再做一次AI决策），
+     * 等待期间不占用决策线程；超时就放弃剩下的奖励。在游戏线程上执行，等待的回调也由游戏线程触发
+     */
+    private static class RewardClaim {
+
+        private enum Step {
+            CLAIM, WAIT, PROCEED, DONE
+        }
+
+        private final ArrayList<RewardItem> rewards = new ArrayList<>(AbstractDungeon.combatRewardScreen.rewards);
+        private final JSONArray selectIndexes;
+        private int next = 0;
+        private Step step = Step.CLAIM;
+
+        RewardClaim(JSONArray selectIndexes) {
+            this.selectIndexes = selectIndexes;
+        }
+
+        /**
+         * 推进到需要等待界面或全部完成为止
+         */
+        void advance() {
+            while (step != Step.DONE) {
+                switch (step) {
+                    case CLAIM:
+                        if (next >= selectIndexes.length()) {
+                            step = Step.PROCEED;
+                            break;
+                        }
+                        RewardItem selectedReward = rewards.get(selectIndexes.getInt(next++));
+                        selectedReward.hb.clicked = true;
+                        lockedHoveredHitbox = selectedReward.hb;
+                        step = Step.WAIT;
+                        break;
+                    case WAIT:
+                        ScreenWatcher.whenSettled(AbstractDungeon.CurrentScreen.COMBAT_REWARD, ScreenWatcher.WAIT_TIMEOUT_MS)
+                                .whenComplete((screen, error) -> {
+                                    if (error != null) {
+                                        logger.info("领取奖励未完成，放弃剩余{}个奖励", selectIndexes.length() - next);
+                                        step = Step.DONE;
+                                    } else {
+                                        step = Step.CLAIM;
+                                    }
+                                    advance();
+                                });
+                        return;
+                    case PROCEED:
+                        pressProceedButton();
+                        step = Step.DONE;
+                        break;
+                    default:
+                        step = Step.DONE;
+                        break;
+                }
+            }
+        }
+    }
+
     /**
      * 获取AI解说内容
      * @param actionInfo 行动信息
+     * @param cacheKey 事件指纹，相同指纹的并发请求只调用一次API，合并进来的请求在结果返回后同样显示，成功结果写入缓存；
+     *                 null表示不缓存也不合并。持久化存储在解说线程上查询，依赖战斗状态的行动类型不持久化
      */
-    public static void getCommentary(JSONObject actionInfo) {
-        Thread thread = new Thread(() -> {
+    public static void getCommentary(JSONObject actionInfo, String cacheKey) {
+        CompletableFuture<String> joined = cacheKey != null ? CommentaryCache.joinFlight(cacheKey) : null;
+        if (joined != null) {
+            logger.info("相同解说请求进行中，合并到已有请求：" + cacheKey);
+            // 已有请求成功后同样显示一次；失败时发起者已经显示过兜底解说
+            joined.thenAccept(commentary -> {
+                if (commentary != null) {
+                    GameThreadQueue.submit(() -> CommentaryUtils.showCommentary(commentary));
+                }
+            });
+            return;
+        }
+        String actionType = actionInfo.optString("行动类型", "");
+        boolean persistent = cacheKey != null && !CommentaryCache.isStateDependent(actionType);
+        RequestPriority priority = RequestPriority.forAction(actionType);
+        AIExecutor.submitCommentary(priority, () -> {
+            String result = null;
+            boolean stored = false;
             try {
-                String commentary = callCommentaryAPI(actionInfo);
+                // 持久化存储要读文件、拿存储的锁，只在解说线程上查
+                String commentary = persistent ? CommentaryStore.get(cacheKey) : null;
+                stored = commentary != null;
+                if (stored) {
+                    logger.info("使用持久化解说：" + commentary);
+                } else {
+                    commentary = callCommentaryAPI(actionInfo);
+                }
                 if (commentary != null && !commentary.trim().isEmpty()) {
+                    result = commentary;
                     // 使用CommentaryUtils显示解说（Effect方式）
                     CommentaryUtils.showCommentary(commentary);
+                } else {
+                    // 平台都不可用时显示本地兜底解说，不写入缓存
+                    CommentaryUtils.showCommentary(FallbackCommentary.forAction(actionInfo));
                 }
             } catch (Exception e) {
                 logger.error("获取解说失败", e);
+            } finally {
+                if (cacheKey != null) {
+                    CommentaryCache.completeFlight(cacheKey, result);
+                    if (result != null && persistent && !stored) {
+                        CommentaryStore.put(cacheKey, result);
+                    }
+                }
+            }
+        }, () -> {
+            // 任务没执行就被丢弃时也要结束登记，否则之后相同指纹的请求都会被合并掉
+            if (cacheKey != null) {
+                CommentaryCache.completeFlight(cacheKey, null);
             }
         });
-        thread.start();
     }
 
     /**
      * 调用AI解说API
      * @param actionInfo 行动信息
-     * @return 解说内容
+     * @return 解说内容，失败或平台都熔断时返回null
      */
     private static String callCommentaryAPI(JSONObject actionInfo) throws IOException {
+        // 所有平台都熔断时直接走本地兜底，不再等超时
+        if (!LLMRouter.isAvailable()) {
+            logger.info("LLM平台均不可用，使用本地解说");
+            return null;
+        }
+
         JSONObject requestBody = new JSONObject();
         
         try {
-            requestBody.put("model", model);
-            
             // 构建解说提示词
             String prompt = buildCommentaryPrompt(actionInfo);
             
@@ -308,69 +444,83 @@ public class AIUtils {
             requestBody.put("messages", messages);
             requestBody.put("max_tokens", 100);
             requestBody.put("temperature", 0.8);
+            if (aislayer.panels.ConfigPanel.commentaryStreaming) {
+                requestBody.put("stream", true);
+                requestBody.put("stream_options", new JSONObject().put("include_usage", true));
+            }
             
         } catch (Exception e) {
             logger.error("构建解说请求失败", e);
-            return "精彩的行动！";
+            return null;
         }
         
         logger.info("请求AI解说...");
         
-        // 创建连接
-        URL url = new URL(apiUrl);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Authorization", "Bearer " + apiKey);
-        connection.setDoOutput(true);
-        
-        // 设置超时时间（从配置中读取，单位：毫秒）
-        int timeoutMs = aislayer.panels.ConfigPanel.commentaryTimeout * 1000;
-        connection.setConnectTimeout(timeoutMs);
-        connection.setReadTimeout(timeoutMs);
+        // 超时上限（从配置中读取，单位：毫秒），实际读取超时按平台最近解说耗时的p99计算
+        int maxTimeoutMs = aislayer.panels.ConfigPanel.commentaryTimeout * 1000;
+        int connectTimeoutMs = Math.min(LLMRouter.CONNECT_TIMEOUT_MS, maxTimeoutMs);
+        long deadline = System.currentTimeMillis() + maxTimeoutMs;
         
-        // 发送请求
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = requestBody.toString().getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
-        } catch (IOException e) {
-            logger.error("发送解说请求失败", e);
-            return "精彩的行动！";
-        }
-        
-        // 获取响应
+        // 通过共享客户端发送请求（复用keep-alive连接）
         try {
-            int responseCode = connection.getResponseCode();
-            if (responseCode == 200) {
-                try (BufferedReader br = new BufferedReader(
-                        new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-                    StringBuilder response = new StringBuilder();
-                    String responseLine;
-                    while ((responseLine = br.readLine()) != null) {
-                        response.append(responseLine.trim());
+            // 各平台模型不同，请求体按模型分别序列化
+            Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+            AtomicReference<String> streamed = new AtomicReference<>("");
+            LLMClient.Response response = LLMRouter.execute(LLMRouter.Kind.COMMENTARY, deadline, (endpoint, call) -> {
+                byte[] body = bodies.computeIfAbsent(endpoint.model, model -> {
+                    synchronized (requestBody) {
+                        return requestBody.put("model", model).toString().getBytes(StandardCharsets.UTF_8);
+                    }
+                });
+                int timeoutMs = endpoint.health.readTimeoutMillis(LLMRouter.Kind.COMMENTARY, maxTimeoutMs);
+                if (!aislayer.panels.ConfigPanel.commentaryStreaming) {
+                    return LLMClient.post(endpoint.apiUrl, endpoint.apiKey, body, connectTimeoutMs, timeoutMs, call);
+                }
+                // 流式模式：每收到一段内容就刷新到屏幕上；每次尝试用自己的缓冲，中断后换平台重新请求时从头开始
+                StringBuilder buffer = new StringBuilder();
+                LLMClient.Response streamResponse = LLMClient.postStream(endpoint.apiUrl, endpoint.apiKey, body, connectTimeoutMs, timeoutMs, data -> {
+                    JSONObject chunk = new JSONObject(data);
+                    TokenUsageStats.recordFrom(chunk);
+                    JSONArray choices = chunk.optJSONArray("choices");
+                    if (choices == null || choices.isEmpty()) {
+                        return;
+                    }
+                    JSONObject delta = choices.getJSONObject(0).optJSONObject("delta");
+                    if (delta != null && delta.has("content") && !delta.isNull("content")) {
+                        buffer.append(delta.getString("content"));
+                        CommentaryUtils.showPartialCommentary(buffer.toString());
+                    }
+                }, call);
+                if (streamResponse.isSuccess() && !call.isCancelled()) {
+                    streamed.set(buffer.toString());
+                }
+                return streamResponse;
+            });
+            if (response.isSuccess()) {
+                try {
+                    if (response.streamed) {
+                        return streamed.get().trim();
+                    }
+                    TokenUsageStats.record(response.extracted.usage);
+                    if (response.extracted.content == null) {
+                        logger.error("解说响应中没有内容");
+                        return null;
                     }
-                    
-                    JSONObject responseJSON = new JSONObject(response.toString());
-                    return responseJSON
-                            .getJSONArray("choices")
-                            .getJSONObject(0)
-                            .getJSONObject("message")
-                            .getString("content")
-                            .trim();
+                    return response.extracted.content.trim();
                 } catch (Exception e) {
                     logger.error("解析解说响应失败", e);
-                    return "精彩的行动！";
+                    return null;
                 }
             } else {
-                logger.error("解说API调用失败，响应码: " + responseCode);
-                return "精彩的行动！";
+                logger.error("解说API调用失败，响应码: " + response.code);
+                return null;
             }
         } catch (SocketTimeoutException e) {
-            logger.info("API调用超时，使用默认解说");
-            return "精彩的行动！";
+            logger.info("API调用超时，使用本地解说");
+            return null;
         } catch (Exception e) {
             logger.error("获取解说响应时发生错误", e);
-            return "精彩的行动！";
+            return null;
         }
     }
 
@@ -491,26 +641,28 @@ public class AIUtils {
         JSONObject systemMessage = new JSONObject();
         systemMessage.put("role", "system");
         systemMessage.put("content", "[" + type + "提示]: " + tip);
-        messagesArray.put(systemMessage);
+        conversation.addTip(systemMessage.getString("content"));
 
         logger.info(systemMessage.get("content"));
     }
 
     private static void addToBot(AbstractGameAction action) {
-        AbstractDungeon.actionManager.addToBottom(action);
+        GameThreadQueue.submit(() -> AbstractDungeon.actionManager.addToBottom(action));
     }
 
     /**
      *
-     * @param apiKey API密钥
-     * @param apiUrl API地址
-     * @param model 模型名称
      * @param info 游戏信息
+     * @param listener 流式模式下动作参数完整时的回调
      * @return 生成的内容，异常返回null
      */
-    private static JSONObject getTool(String apiKey, String apiUrl, String model, String info) {
+    private static JSONObject getTool(JSONObject info, ToolCallAssembler.Listener listener) {
         try {
-            return callChatAPI(apiKey, apiUrl, model, info);
+            return callChatAPI(info, listener);
+        } catch (DispatchedStreamException e) {
+            // 动作已在执行时记入对话，这里不再重试也不再执行
+            logger.warn(e.getMessage());
+            return new JSONObject().put("error", e.getMessage());
         } catch (Exception e) {
             return new JSONObject().put("error", e.getMessage());
         }
@@ -519,13 +671,11 @@ public class AIUtils {
     /**
      * 调用AI聊天API
      */
-    private static JSONObject callChatAPI(String apiKey, String apiUrl, String model, String info)
-            throws IOException {
-        JSONObject requestBody = new JSONObject();
+    private static JSONObject callChatAPI(JSONObject info, ToolCallAssembler.Listener listener) throws IOException {
+        // 各平台模型不同，请求体按模型分别拼装
+        Map<String, byte[]> bodies = new ConcurrentHashMap<>();
         try{
 
-            requestBody.put("model", model);
-
             JSONObject unknownPotions = getUnknownPotions();
             if (!unknownPotions.isEmpty()) {
                 addTip("药水", stringify(unknownPotions));
@@ -541,193 +691,143 @@ public class AIUtils {
                 addTip("卡牌", stringify(unknownCards));
             }
 
-            JSONObject unknownKeywords = new JSONObject();
-            while (!allDescriptions.isEmpty()) {
-                JSONObject unknownKeywordsTemp = getUnknownKeywords();
-                for (String keyword : unknownKeywordsTemp.keySet()) {
-                    unknownKeywords.put(keyword, unknownKeywordsTemp.getString(keyword));
-                }
-            }
+            JSONObject unknownKeywords = getUnknownKeywords();
             if (!unknownKeywords.isEmpty()) {
                 addTip("关键词", stringify(unknownKeywords));
             }
 
+            // 超出预算时发送完整状态，让之前的对话可以折叠
+            StateDiffEncoder.Encoded state = stateEncoder.encode(info, conversation.isOverBudget());
             JSONObject message = new JSONObject();
             message.put("role", "user");
-            message.put("content", "[当前信息]: " + info);
-            messagesArray.put(message);
+            if (state.keyframe) {
+                message.put("content", "[当前信息]: " + stringify(state.content));
+            } else {
+                addTip("游戏", "[信息变化]只列出与上一条信息相比有变化的字段, 未列出的字段保持不变");
+                message.put("content", "[信息变化]: " + stringify(state.content));
+            }
+            // 工具数组固定不变，当前界面能用哪些工具写在当轮消息里
+            String toolInstruction = ToolRegistry.instructionFor(AbstractDungeon.screen);
+            if (toolInstruction != null) {
+                message.put("content", message.getString("content") + "\n[可用工具]: " + toolInstruction);
+            }
+            conversation.addUserMessage(message, state.keyframe);
 
             logger.info(message.get("content"));
 
-            requestBody.put("messages", messagesArray);
-
-            JSONArray toolsArray = new JSONArray();
-
-            JSONObject toolPlayCard = new JSONObject();
-            toolPlayCard.put("type", "function");
-            JSONObject funcPlayCard = funcPlayCard();
-            toolPlayCard.put("function", funcPlayCard);
-            toolsArray.put(toolPlayCard);
-
-            JSONObject toolEndTurn = new JSONObject();
-            toolEndTurn.put("type", "function");
-            JSONObject funcEndTurn = funcEndTurn();
-            toolEndTurn.put("function", funcEndTurn);
-            toolsArray.put(toolEndTurn);
-
-            JSONObject toolUsePotion = new JSONObject();
-            toolUsePotion.put("type", "function");
-            JSONObject funcUsePotion = funcUsePotion();
-            toolUsePotion.put("function", funcUsePotion);
-            toolsArray.put(toolUsePotion);
-
-            JSONObject toolSelect = new JSONObject();
-            toolSelect.put("type", "function");
-            JSONObject funcSelect = funcSelect();
-            toolSelect.put("function", funcSelect);
-            toolsArray.put(toolSelect);
-
-            JSONObject toolBoolean = new JSONObject();
-            toolBoolean.put("type", "function");
-            JSONObject funcBoolean = funcBoolean();
-            toolBoolean.put("function", funcBoolean);
-            toolsArray.put(toolBoolean);
-
-            requestBody.put("tools", toolsArray);
+            bodies.put(AISlayer.primaryEndpoint.model, buildChatBody(AISlayer.primaryEndpoint.model));
         } catch (Exception e){
             return new JSONObject().put("error", e.getMessage());
         }
 
         logger.info("AI思考中...");
-        
-        // 创建连接
-        URL url = new URL(apiUrl);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        connection.setRequestMethod("POST");
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Authorization", "Bearer " + apiKey);
-        connection.setDoOutput(true);
-
-        // 发送请求
-        try (OutputStream os = connection.getOutputStream()) {
-            byte[] input = requestBody.toString().getBytes(StandardCharsets.UTF_8);
-            os.write(input, 0, input.length);
-        } catch (IOException e) {
-            return new JSONObject().put("error", e.getMessage());
-        }
 
-        // 获取响应
-        int responseCode = connection.getResponseCode();
-        if (responseCode == 200) {
-            try (BufferedReader br = new BufferedReader(
-                    new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
-                StringBuilder response = new StringBuilder();
-                String responseLine;
-                while ((responseLine = br.readLine()) != null) {
-                    response.append(responseLine.trim());
+        // 通过共享客户端发送请求（复用keep-alive连接）
+        AtomicReference<ToolCallAssembler> completed = new AtomicReference<>();
+        LLMClient.Response response = LLMRouter.execute(LLMRouter.Kind.DECISION, (endpoint, call) -> {
+            byte[] body = bodies.computeIfAbsent(endpoint.model, AIUtils::buildChatBody);
+            // 读取超时按该平台最近决策耗时的p99计算，平台卡死时不会让决策线程永远挂住
+            int timeoutMs = endpoint.health.readTimeoutMillis(LLMRouter.Kind.DECISION, DECISION_TIMEOUT_MS);
+            if (!aislayer.panels.ConfigPanel.decisionStreaming) {
+                return LLMClient.post(endpoint.apiUrl, endpoint.apiKey, body, LLMRouter.CONNECT_TIMEOUT_MS, timeoutMs, call);
+            }
+            // 每次尝试用自己的拼装器，对冲的两边、换平台前后的请求互不影响
+            ToolCallAssembler assembler = new ToolCallAssembler(listener);
+            try {
+                LLMClient.Response streamResponse = LLMClient.postStream(endpoint.apiUrl, endpoint.apiKey, body, LLMRouter.CONNECT_TIMEOUT_MS, timeoutMs, data -> {
+                    JSONObject chunk = new JSONObject(data);
+                    TokenUsageStats.recordFrom(chunk);
+                    JSONArray choices = chunk.optJSONArray("choices");
+                    if (choices != null && !choices.isEmpty()) {
+                        JSONObject delta = choices.getJSONObject(0).optJSONObject("delta");
+                        if (delta != null) {
+                            assembler.accept(delta);
+                        }
+                    }
+                }, call);
+                if (streamResponse.isSuccess() && !call.isCancelled()) {
+                    completed.set(assembler);
                 }
-
-                JSONObject responseJSON = new JSONObject(response.toString());
-                return responseJSON
-                        .getJSONArray("choices")
-                        .getJSONObject(0)
-                        .getJSONObject("message")
-                        .getJSONArray("tool_calls")
-                        .getJSONObject(0);
+                return streamResponse;
+            } catch (IOException e) {
+                if (assembler.isDispatched()) {
+                    // 动作已经执行，不能再换平台重新请求，否则会执行两次
+                    throw new DispatchedStreamException(e);
+                }
+                throw e;
+            }
+        });
+        if (response.isSuccess()) {
+            try {
+                if (response.streamed) {
+                    ToolCallAssembler assembler = completed.get();
+                    if (assembler == null || !assembler.hasToolCall()) {
+                        return new JSONObject().put("error", "流式响应中没有工具调用");
+                    }
+                    return assembler.toToolCall();
+                }
+                TokenUsageStats.record(response.extracted.usage);
+                if (response.extracted.toolCall == null) {
+                    return new JSONObject().put("error", "响应中没有工具调用");
+                }
+                return response.extracted.toolCall;
             } catch (Exception e){
                 return new JSONObject().put("error", e.getMessage());
             }
         } else {
-            try (
-                    BufferedReader br = new BufferedReader(
-                            new InputStreamReader(
-                                    connection.getErrorStream(),
-                                    StandardCharsets.UTF_8
-                            )
-                    )
-            ) {
-                StringBuilder response = new StringBuilder();
-                String responseLine;
-                while ((responseLine = br.readLine()) != null) {
-                    response.append(responseLine.trim());
-                }
-                throw new IOException("\nAPI调用失败，响应：" + response);
-            }
+            throw new IOException("\nAPI调用失败，响应：" + response.body);
         }
     }
 
+    /**
+     * 拼装决策请求体
+     * 模型、工具定义、知识提示在前（逐字节不变），对话在后
+     * @param model 模型名称
+     */
+    private static byte[] buildChatBody(String model) {
+        ChatRequestBuilder builder = new ChatRequestBuilder(model)
+                .raw("tools", ToolRegistry.allTools())
+                .messages(conversation);
+        if (aislayer.panels.ConfigPanel.decisionStreaming) {
+            builder.stream();
+        }
+        return builder.build();
+    }
+
     private static JSONObject getUnknownRelics() {
-        ArrayList<AbstractRelic> allRelics = getAllRelics();
         JSONObject unknownRelics = new JSONObject();
-        for (AbstractRelic relic : allRelics) {
-            if (!knownRelics.contains(relic.name)) {
-                knownRelics.add(relic.name);
-                unknownRelics.put(relic.name, handleDescription(relic.description));
-            }
+        for (AbstractRelic relic : KnowledgeRegistry.drainRelics()) {
+            unknownRelics.put(relic.name, handleDescription(relic.description));
         }
         return unknownRelics;
     }
 
-    private static ArrayList<AbstractRelic> getAllRelics() {
-        return allRelics;
-    }
-
     private static JSONObject getUnknownPotions() {
-        ArrayList<AbstractPotion> allPotions = getAllPotions();
         JSONObject unknownPotions = new JSONObject();
-        for (AbstractPotion potion : allPotions) {
-            if (!knownPotions.contains(potion.name)) {
-                knownPotions.add(potion.name);
-                unknownPotions.put(potion.name, handleDescription(potion.description));
-            }
+        for (AbstractPotion potion : KnowledgeRegistry.drainPotions()) {
+            unknownPotions.put(potion.name, handleDescription(potion.description));
         }
         return unknownPotions;
     }
 
-    private static ArrayList<AbstractPotion> getAllPotions() {
-        return allPotions;
-    }
-
     private static JSONObject getUnknownKeywords() {
-        JSONObject allKeywords = getAllKeywords();
         JSONObject unknownKeywords = new JSONObject();
-        for (String keywordString : allKeywords.keySet()) {
-            if (!knownKeywords.contains(keywordString)) {
-                knownKeywords.add(keywordString);
-                unknownKeywords.put(keywordString, handleDescription(allKeywords.getString(keywordString)));
-            }
+        String keyword;
+        while ((keyword = KeywordIndex.pollPending()) != null) {
+            // 关键词描述里出现的其他关键词会在 handleDescription 中继续加入待发送队列
+            unknownKeywords.put(keyword, handleDescription(KeywordIndex.getDescription(keyword)));
         }
         return unknownKeywords;
     }
 
-    private static JSONObject getAllKeywords() {
-        JSONObject allKeywords = new JSONObject();
-        JSONObject keywords = new JSONObject(GameDictionary.keywords);
-        for (String keywordString : keywords.keySet()) {
-            if (allDescriptions.toString().contains(keywordString)) {
-                allKeywords.put(keywordString, keywords.getString(keywordString));
-            }
-        }
-        allDescriptions.clear();
-        return allKeywords;
-    }
-
     private static JSONArray getUnknownCards() {
-        ArrayList<AbstractCard> allCards = getAllCards();
         JSONArray unknownCards = new JSONArray();
-        for (AbstractCard card : allCards) {
-            if (!knownCards.contains(card.name)) {
-                unknownCards.put(getCardInfo(card));
-                knownCards.add(card.name);
-            }
+        for (AbstractCard card : KnowledgeRegistry.drainCards()) {
+            unknownCards.put(getCardInfo(card));
         }
         return unknownCards;
     }
 
-    private static ArrayList<AbstractCard> getAllCards() {
-        return allCards;
-    }
-
     private static JSONObject funcSelect() {
         JSONObject funcSelect = new JSONObject();
         funcSelect.put("name", "select");
@@ -852,6 +952,57 @@ public class AIUtils {
         return funcPlayCard;
     }
 
+    private static JSONObject funcPlanTurn() {
+        JSONObject funcPlanTurn = new JSONObject();
+        funcPlanTurn.put("name", "planTurn");
+        funcPlanTurn.put("description", "一次规划本回合接下来的所有操作，只能战斗中使用，按顺序执行；如果抽到新牌、目标死亡或能量不够，剩下的步骤会作废并重新询问你。规划时要按能耗计算好能量");
+
+        JSONObject parameters = new JSONObject();
+        parameters.put("type", "object");
+        JSONObject properties = new JSONObject();
+
+        JSONObject stepProperties = new JSONObject();
+        JSONObject action = new JSONObject();
+        action.put("type", "string");
+        action.put("enum", new JSONArray().put("playCard").put("usePotion").put("endTurn"));
+        action.put("description", "playCard打出手牌，usePotion使用药水，endTurn结束回合（之后的步骤会被忽略）");
+        stepProperties.put("action", action);
+        addParameter(
+                stepProperties,
+                "index",
+                "integer",
+                "打出的牌在规划时手牌中的序号，或药水的序号，序号从0开始；打出前面的牌不会改变后面步骤的序号"
+        );
+        addParameter(
+                stepProperties,
+                "target",
+                "integer",
+                "目标生物的序号，如果是针对全部敌人或不需要目标就选择随便一个敌人"
+        );
+        JSONObject step = new JSONObject();
+        step.put("type", "object");
+        step.put("properties", stepProperties);
+        step.put("required", new JSONArray().put("action"));
+
+        JSONObject steps = new JSONObject();
+        steps.put("type", "array");
+        steps.put("description", "按执行顺序排列的操作");
+        steps.put("items", step);
+        properties.put("steps", steps);
+        addParameter(
+                properties,
+                "reason",
+                "string",
+                "你这样规划的理由,一句简单幽默的话陈述"
+        );
+
+        parameters.put("properties", properties);
+        parameters.put("required", new JSONArray().put("steps").put("reason"));
+
+        funcPlanTurn.put("parameters", parameters);
+        return funcPlanTurn;
+    }
+
     private static JSONObject funcPlayCard() {
         JSONObject funcPlayCard = new JSONObject();
         funcPlayCard.put("name", "playCard");
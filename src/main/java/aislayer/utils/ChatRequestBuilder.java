@@ -0,0 +1,62 @@
+package aislayer.utils;
+
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 聊天请求体拼装
+ * 按"固定前缀在前、易变内容在后"的顺序直接拼接JSON字节：模型、工具定义、知识提示都是预先序列化好的，
+ * 每次请求逐字节相同，服务端的提示词缓存才能命中；当前状态等易变内容放在最后
+ */
+public class ChatRequestBuilder {
+
+    private final ByteArrayOutputStream body = new ByteArrayOutputStream(8192);
+
+    public ChatRequestBuilder(String model) {
+        text("{\"model\":" + JSONObject.quote(model));
+    }
+
+    /**
+     * 写入已经序列化好的JSON字段
+     * @param key 字段名
+     * @param json JSON的UTF-8字节
+     */
+    public ChatRequestBuilder raw(String key, byte[] json) {
+        text("," + JSONObject.quote(key) + ":");
+        body.write(json, 0, json.length);
+        return this;
+    }
+
+    /**
+     * 写入消息列表
+     * @param memory 对话记忆
+     */
+    public ChatRequestBuilder messages(ConversationMemory memory) {
+        StringBuilder messages = new StringBuilder(8192);
+        messages.append(",\"messages\":[");
+        memory.appendMessagesJson(messages);
+        messages.append(']');
+        text(messages.toString());
+        return this;
+    }
+
+    /**
+     * 开启流式响应，并要求在最后一个数据块中返回 usage
+     */
+    public ChatRequestBuilder stream() {
+        text(",\"stream\":true,\"stream_options\":{\"include_usage\":true}");
+        return this;
+    }
+
+    public byte[] build() {
+        body.write('}');
+        return body.toByteArray();
+    }
+
+    private void text(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        body.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,217 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.actions.GameActionManager;
+import com.megacrit.cardcrawl.cards.AbstractCard;
+import com.megacrit.cardcrawl.core.AbstractCreature;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.potions.AbstractPotion;
+import com.megacrit.cardcrawl.relics.AbstractRelic;
+import com.megacrit.cardcrawl.ui.panels.EnergyPanel;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 解说结果缓存
+ * 按事件指纹缓存AI解说，带过期时间和LRU淘汰（上限为 commentary.cache.max_size），
+ * 并对相同指纹的并发请求做合并，同一时间只发出一次API调用。
+ * 回合总结只描述这一回合发生的事，不缓存；打牌、用药水的提示词带有血量和能量，指纹中加入回合数和状态档位
+ */
+public class CommentaryCache {
+
+    private static final int MAX_SIZE = Math.max(1, PerformanceConfig.getInt("commentary.cache.max_size", 100));
+    private static final long TTL_MILLIS = PerformanceConfig.getLong("commentary.cache.ttl_seconds", 600) * 1000L;
+
+    // 不缓存的行动类型
+    private static final Set<String> UNCACHED_TYPES = new HashSet<>(Arrays.asList("结束回合"));
+
+    // 解说依赖当前战斗状态的行动类型
+    private static final Set<String> STATE_DEPENDENT_TYPES = new HashSet<>(Arrays.asList("打牌", "用药水"));
+
+    // 血量分档数，满血到空血分成4档
+    private static final int HEALTH_BANDS = 4;
+
+    // 能量达到这个值以上视为同一档
+    private static final int MAX_ENERGY_BAND = 3;
+
+    private static class CachedCommentary {
+        final String commentary;
+        final long expiresAt;
+
+        CachedCommentary(String commentary, long expiresAt) {
+            this.commentary = commentary;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    // accessOrder=true，按访问顺序排列，最久未用的在最前面
+    private static final LinkedHashMap<String, CachedCommentary> cache = new LinkedHashMap<String, CachedCommentary>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCommentary> eldest) {
+            return size() > MAX_SIZE;
+        }
+    };
+
+    // 正在进行中的请求
+    private static final ConcurrentHashMap<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * 行动类型的解说是否可以缓存
+     * @param actionType 行动类型
+     * @return 是否可以缓存
+     */
+    public static boolean isCacheable(String actionType) {
+        return !UNCACHED_TYPES.contains(actionType);
+    }
+
+    /**
+     * 行动类型的解说是否依赖当前战斗状态（这类解说不应长期保存）
+     * @param actionType 行动类型
+     * @return 是否依赖战斗状态
+     */
+    public static boolean isStateDependent(String actionType) {
+        return STATE_DEPENDENT_TYPES.contains(actionType);
+    }
+
+    /**
+     * 生成事件指纹：同一张牌（含升级次数）打向同一种怪物视为同一事件；
+     * 依赖战斗状态的行动类型还要求回合数、血量档位和剩余能量档位相同
+     * @param actionType 行动类型
+     * @param params 行动参数
+     * @return 指纹，不缓存的行动类型返回null
+     */
+    public static String fingerprint(String actionType, Object... params) {
+        if (!isCacheable(actionType)) {
+            return null;
+        }
+        StringBuilder key = new StringBuilder(actionType);
+        for (Object param : params) {
+            key.append('|');
+            if (param == null) {
+                key.append('-');
+            } else if (param instanceof AbstractCard) {
+                AbstractCard card = (AbstractCard) param;
+                key.append("card:").append(card.cardID).append('+').append(card.timesUpgraded);
+            } else if (param instanceof AbstractCreature) {
+                key.append("creature:").append(((AbstractCreature) param).id);
+            } else if (param instanceof AbstractPotion) {
+                key.append("potion:").append(((AbstractPotion) param).ID);
+            } else if (param instanceof AbstractRelic) {
+                key.append("relic:").append(((AbstractRelic) param).relicId);
+            } else {
+                key.append(param);
+            }
+        }
+        if (isStateDependent(actionType)) {
+            appendStateBucket(key);
+        }
+        return key.toString();
+    }
+
+    /**
+     * 追加回合数和状态档位
+     */
+    private static void appendStateBucket(StringBuilder key) {
+        key.append("|turn:").append(GameActionManager.turn);
+        if (AbstractDungeon.player != null) {
+            int maxHealth = Math.max(1, AbstractDungeon.player.maxHealth);
+            int healthBand = Math.min(HEALTH_BANDS, Math.max(0, AbstractDungeon.player.currentHealth) * HEALTH_BANDS / maxHealth);
+            key.append("|hp:").append(healthBand);
+        }
+        key.append("|energy:").append(Math.min(MAX_ENERGY_BAND, EnergyPanel.getCurrentEnergy()));
+    }
+
+    /**
+     * 读取缓存
+     * @param key 事件指纹
+     * @return 未命中或已过期返回null
+     */
+    public static synchronized String get(String key) {
+        CachedCommentary entry = cache.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        if (entry.expiresAt < System.currentTimeMillis()) {
+            cache.remove(key);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return entry.commentary;
+    }
+
+    /**
+     * 写入缓存
+     * @param key 事件指纹
+     * @param commentary 解说内容
+     */
+    public static synchronized void put(String key, String commentary) {
+        if (key == null || commentary == null || commentary.trim().isEmpty()) {
+            return;
+        }
+        cache.put(key, new CachedCommentary(commentary, System.currentTimeMillis() + TTL_MILLIS));
+    }
+
+    /**
+     * 加入进行中的请求
+     * @param key 事件指纹
+     * @return 已有相同请求时返回它的结果Future（调用者无需再请求）；返回null表示调用者是发起者，
+     *         完成后必须调用 {@link #completeFlight(String, String)}
+     */
+    public static CompletableFuture<String> joinFlight(String key) {
+        CompletableFuture<String> existing = inFlight.putIfAbsent(key, new CompletableFuture<>());
+        if (existing != null) {
+            coalesced.incrementAndGet();
+        }
+        return existing;
+    }
+
+    /**
+     * 结束进行中的请求，并通知合并进来的调用者
+     * @param key 事件指纹
+     * @param commentary 解说内容，失败时为null（不写入缓存）
+     */
+    public static void completeFlight(String key, String commentary) {
+        if (commentary != null) {
+            put(key, commentary);
+        }
+        CompletableFuture<String> future = inFlight.remove(key);
+        if (future != null) {
+            future.complete(commentary);
+        }
+    }
+
+    /**
+     * 清空缓存
+     */
+    public static synchronized void clear() {
+        cache.clear();
+    }
+
+    /**
+     * 获取缓存条目数
+     */
+    public static synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * 获取缓存统计信息
+     * @return 统计信息
+     */
+    public static String getStats() {
+        return String.format("缓存: %d/%d, 命中: %d, 未命中: %d, 合并请求: %d",
+                size(), MAX_SIZE, hits.get(), misses.get(), coalesced.get());
+    }
+}
@@ -0,0 +1,513 @@
+package aislayer.utils;
+
+import aislayer.panels.ConfigPanel;
+import com.evacipated.cardcrawl.modthespire.lib.ConfigUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 解说持久化存储，游戏重启后仍可复用之前生成的解说
+ * 数据文件只追加写入，每条记录为 [键长度][键][内容长度][内容]；
+ * 索引文件为定长条目 [键哈希][记录偏移][记录长度][最后访问时间][写入时间]，启动时一次读入内存，访问时间通过文件通道原地改写。
+ * 写入超过 commentary.store.ttl_hours 的条目视为未命中，加载和压缩时丢弃。
+ * 条目数或数据文件大小超过上限时按最后访问时间做LRU压缩：压缩结果写到下一代的文件对，
+ * 写完后再原子替换代号文件完成切换，切换前出错继续使用旧文件，启动时只加载代号文件指向的那一代。
+ * 读写都会访问文件，只在解说线程上调用，不要在游戏线程上调用
+ */
+public class CommentaryStore {
+
+    public static final Logger logger = LogManager.getLogger(CommentaryStore.class.getName());
+
+    private static final String FILE_PREFIX = "commentary.";
+    private static final String DATA_SUFFIX = ".dat";
+    private static final String INDEX_SUFFIX = ".idx";
+    // 文件格式版本，格式变化后旧版本的文件按不属于当前一代的文件删除
+    private static final String FORMAT_VERSION = ".v2";
+    // 当前代号，压缩完成时原子替换
+    private static final String GENERATION_FILE = "commentary.gen";
+
+    // 索引条目：hash(8) + offset(8) + length(4) + lastAccess(8) + createdAt(8)
+    private static final int INDEX_ENTRY_SIZE = 36;
+    private static final int ACCESS_FIELD_OFFSET = 20;
+
+    private static final boolean ENABLED = PerformanceConfig.getBoolean("commentary.store.enabled", true);
+    private static final int MAX_ENTRIES = Math.max(16, PerformanceConfig.getInt("commentary.store.max_entries", 2000));
+    private static final long MAX_BYTES = Math.max(64 * 1024, PerformanceConfig.getLong("commentary.store.max_bytes", 4 * 1024 * 1024));
+    private static final long TTL_MILLIS = Math.max(1, PerformanceConfig.getLong("commentary.store.ttl_hours", 168)) * 3600_000L;
+
+    private static class IndexEntry {
+        final long offset;
+        final int length;
+        final long createdAt;
+        long lastAccess;
+        // 该条目在索引文件中的位置，用于原地更新访问时间
+        long slot;
+
+        IndexEntry(long offset, int length, long lastAccess, long createdAt, long slot) {
+            this.offset = offset;
+            this.length = length;
+            this.lastAccess = lastAccess;
+            this.createdAt = createdAt;
+            this.slot = slot;
+        }
+
+        boolean isExpired(long now) {
+            return now - createdAt > TTL_MILLIS;
+        }
+    }
+
+    private static final Map<Long, IndexEntry> index = new HashMap<>();
+
+    private static File directory;
+    private static RandomAccessFile dataFile;
+    private static RandomAccessFile indexFile;
+    private static long generation = 0;
+    private static volatile boolean loaded = false;
+    private static volatile boolean broken = false;
+
+    // 统计数据只在持有锁时修改，读取不加锁，统计面板可能在游戏线程上读取
+    private static volatile long hits = 0;
+    private static volatile long misses = 0;
+    private static volatile long compactions = 0;
+    private static volatile int entryCount = 0;
+    private static volatile long dataBytes = 0;
+
+    /**
+     * 读取持久化的解说
+     * @param key 事件指纹
+     * @return 未命中返回null
+     */
+    public static synchronized String get(String key) {
+        if (!ensureLoaded() || key == null) {
+            return null;
+        }
+        String storeKey = storeKey(key);
+        long hash = hash(storeKey);
+        IndexEntry entry = index.get(hash);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        if (entry.isExpired(now)) {
+            // 数据留到压缩时回收
+            index.remove(hash);
+            entryCount = index.size();
+            misses++;
+            return null;
+        }
+        try {
+            String[] record = readRecord(entry);
+            // 哈希碰撞时键不相同，视为未命中
+            if (record == null || !storeKey.equals(record[0])) {
+                misses++;
+                return null;
+            }
+            entry.lastAccess = now;
+            indexFile.getChannel().write(longBuffer(entry.lastAccess), entry.slot + ACCESS_FIELD_OFFSET);
+            hits++;
+            return record[1];
+        } catch (IOException e) {
+            logger.warn("读取解说存储失败: " + e.getMessage());
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * 写入持久化的解说
+     * @param key 事件指纹
+     * @param commentary 解说内容
+     */
+    public static synchronized void put(String key, String commentary) {
+        if (key == null || commentary == null || commentary.trim().isEmpty() || !ensureLoaded()) {
+            return;
+        }
+        String storeKey = storeKey(key);
+        try {
+            byte[] keyBytes = storeKey.getBytes(StandardCharsets.UTF_8);
+            byte[] valueBytes = commentary.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer record = ByteBuffer.allocate(8 + keyBytes.length + valueBytes.length);
+            record.putInt(keyBytes.length).put(keyBytes).putInt(valueBytes.length).put(valueBytes);
+            record.flip();
+
+            long offset = dataFile.length();
+            dataFile.getChannel().write(record, offset);
+            long now = System.currentTimeMillis();
+            long slot = indexFile.length();
+            IndexEntry entry = new IndexEntry(offset, record.capacity(), now, now, slot);
+            writeIndexEntry(indexFile.getChannel(), hash(storeKey), entry);
+            // 同一个键重复写入时旧记录成为垃圾，压缩时回收
+            index.put(hash(storeKey), entry);
+
+            if (index.size() > MAX_ENTRIES || dataFile.length() > MAX_BYTES) {
+                compact();
+            }
+        } catch (IOException e) {
+            logger.warn("写入解说存储失败: " + e.getMessage());
+        }
+        updateStats();
+    }
+
+    /**
+     * 清空持久化的解说
+     */
+    public static synchronized void clear() {
+        if (!ensureLoaded()) {
+            return;
+        }
+        try {
+            dataFile.setLength(0);
+            indexFile.setLength(0);
+            index.clear();
+            logger.info("解说存储已清空");
+        } catch (IOException e) {
+            logger.warn("清空解说存储失败: " + e.getMessage());
+        }
+        updateStats();
+    }
+
+    /**
+     * 获取存储统计信息，不加锁
+     * @return 统计信息
+     */
+    public static String getStats() {
+        if (!loaded || broken) {
+            return "解说存储: 未启用";
+        }
+        return String.format("解说存储: %d/%d条, %dKB, 命中: %d, 未命中: %d, 压缩: %d次",
+                entryCount, MAX_ENTRIES, dataBytes / 1024, hits, misses, compactions);
+    }
+
+    /**
+     * 刷新条目数和数据文件大小的统计，调用方持有锁
+     */
+    private static void updateStats() {
+        if (!loaded || broken) {
+            return;
+        }
+        entryCount = index.size();
+        try {
+            dataBytes = dataFile.length();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * 首次使用时打开当前一代的文件并读入索引
+     * @return 存储是否可用
+     */
+    private static boolean ensureLoaded() {
+        if (!ENABLED || broken) {
+            return false;
+        }
+        if (loaded) {
+            return true;
+        }
+        try {
+            directory = new File(ConfigUtils.CONFIG_DIR + File.separator + "aislayer");
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("无法创建目录 " + directory.getAbsolutePath());
+            }
+            generation = readGeneration();
+            deleteStaleFiles();
+            openFiles();
+            loadIndex();
+            loaded = true;
+            updateStats();
+            logger.info("解说存储已加载: {} 条 ({})", index.size(), directory.getAbsolutePath());
+            return true;
+        } catch (IOException e) {
+            broken = true;
+            logger.warn("解说存储不可用，仅使用内存缓存: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 打开当前一代的文件，失败时保留原来打开的文件不变
+     */
+    private static void openFiles() throws IOException {
+        RandomAccessFile newData = new RandomAccessFile(dataFileOf(generation), "rw");
+        RandomAccessFile newIndex;
+        try {
+            newIndex = new RandomAccessFile(indexFileOf(generation), "rw");
+        } catch (IOException e) {
+            closeQuietly(newData);
+            throw e;
+        }
+        dataFile = newData;
+        indexFile = newIndex;
+    }
+
+    private static File dataFileOf(long generation) {
+        return new File(directory, FILE_PREFIX + generation + FORMAT_VERSION + DATA_SUFFIX);
+    }
+
+    private static File indexFileOf(long generation) {
+        return new File(directory, FILE_PREFIX + generation + FORMAT_VERSION + INDEX_SUFFIX);
+    }
+
+    /**
+     * 读取当前代号，代号文件不存在或损坏时从第0代开始
+     */
+    private static long readGeneration() {
+        File file = new File(directory, GENERATION_FILE);
+        if (!file.isFile()) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim());
+        } catch (IOException | NumberFormatException e) {
+            logger.warn("解说存储代号文件损坏，从头开始: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * 先写临时文件再原子替换代号文件，替换成功即完成切换
+     */
+    private static void writeGeneration(long value) throws IOException {
+        File temp = new File(directory, GENERATION_FILE + ".tmp");
+        Files.write(temp.toPath(), Long.toString(value).getBytes(StandardCharsets.UTF_8));
+        File target = new File(directory, GENERATION_FILE);
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 删除不属于当前一代的文件：压缩中途退出留下的新文件、切换后没删掉的旧文件、旧格式的文件
+     */
+    private static void deleteStaleFiles() {
+        String dataName = dataFileOf(generation).getName();
+        String indexName = indexFileOf(generation).getName();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.startsWith(FILE_PREFIX) || name.equals(dataName) || name.equals(indexName)) {
+                continue;
+            }
+            if (name.endsWith(DATA_SUFFIX) || name.endsWith(INDEX_SUFFIX)) {
+                deleteQuietly(file);
+            }
+        }
+    }
+
+    private static void closeQuietly(RandomAccessFile file) {
+        try {
+            file.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("无法删除解说存储旧文件 " + file.getName());
+        }
+    }
+
+    private static void loadIndex() throws IOException {
+        index.clear();
+        long dataLength = dataFile.length();
+        // 丢弃上次异常退出时写了一半的索引条目
+        long validLength = indexFile.length() / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE;
+        if (validLength != indexFile.length()) {
+            indexFile.setLength(validLength);
+        }
+        if (validLength == 0) {
+            return;
+        }
+        // 普通读取而不是内存映射，映射要等GC才释放，Windows上映射着的文件无法被替换或删除
+        ByteBuffer buffer = ByteBuffer.allocate((int) validLength);
+        FileChannel channel = indexFile.getChannel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) < 0) {
+                throw new IOException("索引文件读取不完整");
+            }
+        }
+        buffer.flip();
+        long now = System.currentTimeMillis();
+        for (long slot = 0; slot < validLength; slot += INDEX_ENTRY_SIZE) {
+            long hash = buffer.getLong();
+            long offset = buffer.getLong();
+            int length = buffer.getInt();
+            long lastAccess = buffer.getLong();
+            long createdAt = buffer.getLong();
+            // 指向数据文件之外的条目说明数据文件被截断，跳过
+            if (offset < 0 || length <= 0 || offset + length > dataLength) {
+                continue;
+            }
+            IndexEntry entry = new IndexEntry(offset, length, lastAccess, createdAt, slot);
+            // 后写入的条目覆盖先写入的，过期的新条目同样让旧条目失效
+            if (entry.isExpired(now)) {
+                index.remove(hash);
+            } else {
+                index.put(hash, entry);
+            }
+        }
+    }
+
+    /**
+     * 丢弃过期条目，再按最后访问时间保留最近使用的条目，写到下一代的数据文件和索引文件后切换过去
+     * 代号文件替换之前出错时旧文件仍然打开且完整，继续使用；之后出错则停用存储
+     */
+    private static void compact() throws IOException {
+        long now = System.currentTimeMillis();
+        List<Map.Entry<Long, IndexEntry>> entries = new ArrayList<>();
+        for (Map.Entry<Long, IndexEntry> item : index.entrySet()) {
+            if (!item.getValue().isExpired(now)) {
+                entries.add(item);
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue().lastAccess, a.getValue().lastAccess));
+        long nextGeneration = generation + 1;
+        Map<Long, IndexEntry> compacted;
+        try {
+            compacted = writeCompacted(entries, nextGeneration);
+            writeGeneration(nextGeneration);
+        } catch (IOException e) {
+            // 没写完的新文件留给下次启动时清理
+            logger.warn("解说存储压缩失败，继续使用旧文件: " + e.getMessage());
+            return;
+        }
+
+        RandomAccessFile oldData = dataFile;
+        RandomAccessFile oldIndex = indexFile;
+        long oldGeneration = generation;
+        generation = nextGeneration;
+        try {
+            openFiles();
+        } catch (IOException e) {
+            // 代号已经指向新文件，旧文件不能再继续写入
+            broken = true;
+            closeQuietly(oldData);
+            closeQuietly(oldIndex);
+            index.clear();
+            throw e;
+        }
+        closeQuietly(oldData);
+        closeQuietly(oldIndex);
+        deleteQuietly(dataFileOf(oldGeneration));
+        deleteQuietly(indexFileOf(oldGeneration));
+
+        int dropped = index.size() - compacted.size();
+        index.clear();
+        index.putAll(compacted);
+        compactions++;
+        logger.info("解说存储压缩完成，保留 {} 条，淘汰 {} 条", compacted.size(), dropped);
+    }
+
+    /**
+     * 把要保留的条目写到指定一代的文件对，写完后落盘
+     * @return 新文件中的索引
+     */
+    private static Map<Long, IndexEntry> writeCompacted(List<Map.Entry<Long, IndexEntry>> entries, long target) throws IOException {
+        // 压缩到上限的3/4，避免每次写入都触发压缩
+        int keepEntries = MAX_ENTRIES * 3 / 4;
+        long keepBytes = MAX_BYTES * 3 / 4;
+        Map<Long, IndexEntry> compacted = new HashMap<>();
+        try (RandomAccessFile newData = new RandomAccessFile(dataFileOf(target), "rw");
+             RandomAccessFile newIndex = new RandomAccessFile(indexFileOf(target), "rw")) {
+            newData.setLength(0);
+            newIndex.setLength(0);
+            long written = 0;
+            for (Map.Entry<Long, IndexEntry> item : entries) {
+                IndexEntry entry = item.getValue();
+                if (compacted.size() >= keepEntries || written + entry.length > keepBytes) {
+                    break;
+                }
+                ByteBuffer record = ByteBuffer.allocate(entry.length);
+                dataFile.getChannel().read(record, entry.offset);
+                record.flip();
+                newData.getChannel().write(record, written);
+                IndexEntry moved = new IndexEntry(written, entry.length, entry.lastAccess, entry.createdAt,
+                        (long) compacted.size() * INDEX_ENTRY_SIZE);
+                writeIndexEntry(newIndex.getChannel(), item.getKey(), moved);
+                compacted.put(item.getKey(), moved);
+                written += entry.length;
+            }
+            // 切换前落盘，避免代号已经指向新文件而内容还在缓存里
+            newData.getChannel().force(true);
+            newIndex.getChannel().force(true);
+        }
+        return compacted;
+    }
+
+    private static String[] readRecord(IndexEntry entry) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(entry.length);
+        dataFile.getChannel().read(record, entry.offset);
+        record.flip();
+        if (record.remaining() < 8) {
+            return null;
+        }
+        int keyLength = record.getInt();
+        if (keyLength < 0 || keyLength > record.remaining() - 4) {
+            return null;
+        }
+        byte[] keyBytes = new byte[keyLength];
+        record.get(keyBytes);
+        int valueLength = record.getInt();
+        if (valueLength < 0 || valueLength > record.remaining()) {
+            return null;
+        }
+        byte[] valueBytes = new byte[valueLength];
+        record.get(valueBytes);
+        return new String[]{
+                new String(keyBytes, StandardCharsets.UTF_8),
+                new String(valueBytes, StandardCharsets.UTF_8)
+        };
+    }
+
+    private static void writeIndexEntry(FileChannel channel, long hash, IndexEntry entry) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        buffer.putLong(hash).putLong(entry.offset).putInt(entry.length).putLong(entry.lastAccess).putLong(entry.createdAt);
+        buffer.flip();
+        channel.write(buffer, entry.slot);
+    }
+
+    private static ByteBuffer longBuffer(long value) {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putLong(value);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * 解说风格和语言不同时不复用
+     */
+    private static String storeKey(String key) {
+        return ConfigPanel.commentaryStyle + "|" + ConfigPanel.language + "|" + key;
+    }
+
+    /**
+     * 64位FNV-1a哈希
+     */
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= (b & 0xff);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+}
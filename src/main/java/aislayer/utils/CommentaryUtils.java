@@ -2,6 +2,7 @@ package aislayer.utils;
 
 import aislayer.AISlayer;
 import aislayer.panels.ConfigPanel;
+import aislayer.ui.CommentaryDisplay;
 import com.megacrit.cardcrawl.core.Settings;
 import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
 import com.megacrit.cardcrawl.monsters.AbstractMonster;
@@ -14,8 +15,6 @@ import org.json.JSONObject;
 
 import java.io.File;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * 解说工具类，专门处理AI解说功能
@@ -33,9 +32,6 @@ public class CommentaryUtils {
     // 解说队列
     private static final ArrayList<String> commentaryQueue = new ArrayList<>();
     
-    // 解说缓存
-    private static final Map<String, String> commentaryCache = new HashMap<>();
-    
     // 解说开关
     public static boolean commentaryEnabled = true;
     
@@ -59,19 +55,20 @@ public class CommentaryUtils {
         }
         
         try {
-            JSONObject actionInfo = AISlayer.getActionInfo(actionType, params);
-            String cacheKey = generateCacheKey(actionType, params);
+            String cacheKey = CommentaryCache.fingerprint(actionType, params);
             
-            // 检查缓存
-            if (commentaryCache.containsKey(cacheKey)) {
-                logger.info("使用缓存解说：" + commentaryCache.get(cacheKey));
-                showCommentary(commentaryCache.get(cacheKey));
+            // 检查内存缓存（不缓存的行动类型没有指纹），持久化存储要读文件，留到解说线程上查
+            String cached = cacheKey != null ? CommentaryCache.get(cacheKey) : null;
+            if (cached != null) {
+                logger.info("使用缓存解说：" + cached);
+                showCommentary(cached);
                 return;
             }
             
             // 调用AI获取解说
+            JSONObject actionInfo = AISlayer.getActionInfo(actionType, params);
             logger.info("调用AI获取解说：" + actionType);
-            AIUtils.getCommentary(actionInfo);
+            AIUtils.getCommentary(actionInfo, cacheKey);
             
         } catch (Exception e) {
             logger.error("触发解说失败", e);
@@ -142,6 +139,9 @@ public class CommentaryUtils {
         // 输出到控制台，方便调试
         logger.info("=== AI解说 === " + formattedCommentary);
         
+        // 同步到解说面板（流式解说时替换掉未完成的文本），面板在游戏线程渲染，只在游戏线程修改
+        GameThreadQueue.submit(() -> CommentaryDisplay.getInstance().showCommentary(formattedCommentary));
+        
         // 添加到队列
         commentaryQueue.add(formattedCommentary);
         
@@ -157,6 +157,18 @@ public class CommentaryUtils {
         lastCommentaryTime = System.currentTimeMillis();
     }
     
+    /**
+     * 显示流式生成中的部分解说，只刷新解说面板，不入队也不播放语音
+     * @param partialCommentary 目前已收到的解说内容
+     */
+    public static void showPartialCommentary(String partialCommentary) {
+        if (partialCommentary == null || partialCommentary.trim().isEmpty()) {
+            return;
+        }
+        String formattedCommentary = AISlayer.formatCommentary(partialCommentary);
+        GameThreadQueue.submit(() -> CommentaryDisplay.getInstance().showStreamingCommentary(formattedCommentary));
+    }
+    
     /**
      * 显示下一条解说
      */
@@ -167,47 +179,27 @@ public class CommentaryUtils {
         
         String commentary = commentaryQueue.get(0);
         
-        // 直接使用SpeechBubble Effect（不使用Action）
-        if (AbstractDungeon.player != null) {
-            AbstractDungeon.effectList.add(new SpeechBubble(
-                AbstractDungeon.player.dialogX,
-                AbstractDungeon.player.dialogY,
-                3.0f, // 显示时长3秒
-                commentary,
-                true // 是玩家
-            ));
-        }
-        
-        // 延迟移除已显示的解说
-        Thread thread = new Thread(() -> {
-            try {
-                Thread.sleep(3500); // 等待3.5秒（比Effect稍长一点）
-                if (!commentaryQueue.isEmpty()) {
-                    commentaryQueue.remove(0);
-                    // 显示下一条
-                    displayNextCommentary();
-                }
-            } catch (InterruptedException e) {
-                logger.error("解说队列处理失败", e);
+        // 直接使用SpeechBubble Effect（不使用Action），特效列表只能在游戏线程修改
+        GameThreadQueue.submit(() -> {
+            if (AbstractDungeon.player != null) {
+                AbstractDungeon.effectList.add(new SpeechBubble(
+                    AbstractDungeon.player.dialogX,
+                    AbstractDungeon.player.dialogY,
+                    3.0f, // 显示时长3秒
+                    commentary,
+                    true // 是玩家
+                ));
             }
         });
-        thread.start();
-    }
-    
-    /**
-     * 生成缓存键
-     * @param actionType 行动类型
-     * @param params 参数
-     * @return 缓存键
-     */
-    private static String generateCacheKey(String actionType, Object... params) {
-        StringBuilder key = new StringBuilder(actionType);
-        for (Object param : params) {
-            if (param != null) {
-                key.append("_").append(param.toString());
+        
+        // 延迟移除已显示的解说（等待3.5秒，比Effect稍长一点）
+        AIExecutor.schedule(() -> {
+            if (!commentaryQueue.isEmpty()) {
+                commentaryQueue.remove(0);
+                // 显示下一条
+                displayNextCommentary();
             }
-        }
-        return key.toString();
+        }, 3500);
     }
     
     /**
@@ -255,7 +247,7 @@ public class CommentaryUtils {
      * 清空解说缓存
      */
     public static void clearCommentaryCache() {
-        commentaryCache.clear();
+        CommentaryCache.clear();
     }
     
     /**
@@ -264,9 +256,7 @@ public class CommentaryUtils {
      * @param commentary 解说内容
      */
     public static void addToCache(String key, String commentary) {
-        if (commentaryCache.size() < 100) { // 限制缓存大小
-            commentaryCache.put(key, commentary);
-        }
+        CommentaryCache.put(key, commentary);
     }
     
     /**
@@ -274,8 +264,8 @@ public class CommentaryUtils {
      * @return 统计信息
      */
     public static String getCommentaryStats() {
-        return String.format("解说队列: %d, 缓存: %d, 行动计数: %d", 
-                commentaryQueue.size(), commentaryCache.size(), actionCounter);
+        return String.format("解说队列: %d, 行动计数: %d, %s, %s", 
+                commentaryQueue.size(), actionCounter, CommentaryCache.getStats(), CommentaryStore.getStats());
     }
     
     /**
@@ -314,6 +304,7 @@ public class CommentaryUtils {
             
             // 添加怪物信息
             StringBuilder monsterInfo = new StringBuilder();
+            StringBuilder monsterIds = new StringBuilder();
             if (AbstractDungeon.getCurrRoom() != null && AbstractDungeon.getCurrRoom().monsters != null) {
                 for (com.megacrit.cardcrawl.monsters.AbstractMonster monster : AbstractDungeon.getCurrRoom().monsters.monsters) {
                     if (monster.isDead || monster.isDying || monster.isEscaping) {
@@ -323,6 +314,7 @@ public class CommentaryUtils {
                     if (monsterInfo.length() > 0) {
                         monsterInfo.append("和");
                     }
+                    monsterIds.append(monster.id).append(',');
                     
                     if (ConfigPanel.detailedMonsterIntro) {
                         monsterInfo.append(String.format("%s(%d/%d HP)",
@@ -339,9 +331,18 @@ public class CommentaryUtils {
             
             actionInfo.put("怪物信息", monsterInfo.toString());
             
+            // 检查内存缓存（按怪物ID，血量不同也视为同一场介绍），持久化存储留到解说线程上查
+            String cacheKey = CommentaryCache.fingerprint("怪物介绍", monsterIds.toString(), ConfigPanel.detailedMonsterIntro);
+            String cached = CommentaryCache.get(cacheKey);
+            if (cached != null) {
+                logger.info("使用缓存怪物介绍：" + cached);
+                showCommentary(cached);
+                return;
+            }
+            
             // 调用AI获取解说
             logger.info("调用AI获取怪物介绍");
-            AIUtils.getCommentary(actionInfo);
+            AIUtils.getCommentary(actionInfo, cacheKey);
             
         } catch (Exception e) {
             logger.error("触发怪物介绍失败", e);
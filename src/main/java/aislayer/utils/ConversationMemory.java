@@ -0,0 +1,233 @@
+package aislayer.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * AI决策对话记忆
+ * 知识提示（卡牌、遗物、关键词等）固定放在最前面，整局只追加不重发，不计入token预算；最近的几轮对话原样保留，
+ * 超出token预算的旧对话折叠成一条摘要（只保留当时做了什么动作），
+ * 这样长战斗中每次请求的大小基本不变，不会随回合数线性增长。
+ * 状态差量依赖最近一次完整状态，所以最近的关键帧及其之后的对话不会被折叠
+ */
+public class ConversationMemory {
+
+    public static final Logger logger = LogManager.getLogger(ConversationMemory.class.getName());
+
+    private static final int TOKEN_BUDGET = Math.max(500, PerformanceConfig.getInt("conversation.token_budget", 6000));
+    private static final int MAX_SUMMARY_LINES = Math.max(1, PerformanceConfig.getInt("conversation.summary.max_lines", 40));
+
+    /**
+     * 一轮对话：当前信息 + AI的工具调用 + 工具结果
+     */
+    private static class Turn {
+        // 序列化后的消息，加入时只序列化一次
+        final List<String> messages = new ArrayList<>();
+        String action = "";
+        boolean keyframe = false;
+        int tokens = 0;
+
+        void add(JSONObject message) {
+            String json = message.toString();
+            messages.add(json);
+            tokens += estimateTokens(json);
+        }
+    }
+
+    // 知识提示，按内容去重
+    private final LinkedHashSet<String> tips = new LinkedHashSet<>();
+    private int tipTokens = 0;
+    // 知识提示序列化后的固定前缀，只追加
+    private final StringBuilder tipsJson = new StringBuilder();
+
+    private final LinkedList<Turn> turns = new LinkedList<>();
+    private int turnTokens = 0;
+
+    private final LinkedList<String> summary = new LinkedList<>();
+    private int summaryTokens = 0;
+    private int foldedTurns = 0;
+
+    /**
+     * 添加固定保留的知识提示
+     * @param content 提示内容
+     */
+    public synchronized void addTip(String content) {
+        if (tips.add(content)) {
+            tipTokens += estimateTokens(content);
+            if (tipsJson.length() > 0) {
+                tipsJson.append(',');
+            }
+            tipsJson.append(systemMessage(content));
+        }
+    }
+
+    /**
+     * 开始新的一轮对话
+     * @param message 当前信息（user消息）
+     * @param keyframe 是否为完整状态（否则为差量）
+     */
+    public synchronized void addUserMessage(JSONObject message, boolean keyframe) {
+        Turn turn = new Turn();
+        turn.keyframe = keyframe;
+        turn.add(message);
+        turns.add(turn);
+        turnTokens += turn.tokens;
+        compact();
+    }
+
+    /**
+     * 记录本轮AI的工具调用及其结果
+     * @param assistant 带tool_calls的assistant消息
+     * @param toolResponse 对应的tool消息
+     * @param action 动作的简短描述，折叠时写入摘要
+     */
+    public synchronized void addToolExchange(JSONObject assistant, JSONObject toolResponse, String action) {
+        if (turns.isEmpty()) {
+            turns.add(new Turn());
+        }
+        Turn turn = turns.getLast();
+        int before = turn.tokens;
+        turn.add(assistant);
+        turn.add(toolResponse);
+        turn.action = action;
+        turnTokens += turn.tokens - before;
+        compact();
+    }
+
+    /**
+     * 写出发送给API的消息列表（不含外层方括号）：知识提示 → 旧对话摘要 → 最近对话
+     * 知识提示部分是逐字节不变的前缀，有利于服务端的提示词缓存
+     * @param out 输出
+     */
+    public synchronized void appendMessagesJson(StringBuilder out) {
+        boolean first = true;
+        if (tipsJson.length() > 0) {
+            out.append(tipsJson);
+            first = false;
+        }
+        if (!summary.isEmpty()) {
+            if (!first) {
+                out.append(',');
+            }
+            out.append(systemMessage("[之前的行动]: " + String.join("; ", summary)));
+            first = false;
+        }
+        for (Turn turn : turns) {
+            for (String message : turn.messages) {
+                if (!first) {
+                    out.append(',');
+                }
+                out.append(message);
+                first = false;
+            }
+        }
+    }
+
+    /**
+     * 清空对话记忆（包括知识提示）
+     */
+    public synchronized void clear() {
+        tips.clear();
+        tipTokens = 0;
+        tipsJson.setLength(0);
+        clearTurns();
+    }
+
+    /**
+     * 只清空对话和摘要，保留知识提示（换房间时使用）
+     */
+    public synchronized void clearTurns() {
+        turns.clear();
+        turnTokens = 0;
+        summary.clear();
+        summaryTokens = 0;
+        foldedTurns = 0;
+    }
+
+    /**
+     * 对话部分是否超出token预算（最近关键帧之后的对话无法折叠时会出现）
+     */
+    public synchronized boolean isOverBudget() {
+        return summaryTokens + turnTokens > TOKEN_BUDGET;
+    }
+
+    /**
+     * 获取当前估算的token数
+     */
+    public synchronized int getTokenCount() {
+        return tipTokens + summaryTokens + turnTokens;
+    }
+
+    /**
+     * 获取对话记忆统计信息
+     * @return 统计信息
+     */
+    public synchronized String getStats() {
+        return String.format("对话记忆: 对话约%d/%d tokens, 提示%d条(约%d tokens), 最近%d轮, 已折叠%d轮",
+                summaryTokens + turnTokens, TOKEN_BUDGET, tips.size(), tipTokens, turns.size(), foldedTurns);
+    }
+
+    /**
+     * 超出预算时把最旧的对话折叠进摘要，最近的关键帧及之后的对话保留
+     */
+    private void compact() {
+        while (turns.size() > 1 && isOverBudget() && foldable(turns.getFirst())) {
+            Turn oldest = turns.removeFirst();
+            turnTokens -= oldest.tokens;
+            foldedTurns++;
+            if (!oldest.action.isEmpty()) {
+                String line = foldedTurns + "." + oldest.action;
+                summary.add(line);
+                summaryTokens += estimateTokens(line);
+            }
+            while (summary.size() > MAX_SUMMARY_LINES) {
+                summaryTokens -= estimateTokens(summary.removeFirst());
+            }
+        }
+        if (foldedTurns > 0 && logger.isDebugEnabled()) {
+            logger.debug(getStats());
+        }
+    }
+
+    /**
+     * 最近的关键帧（没有关键帧时为最新一轮）之前的对话才可以折叠
+     */
+    private boolean foldable(Turn turn) {
+        Turn latestKeyframe = turns.getLast();
+        for (Turn candidate : turns) {
+            if (candidate.keyframe) {
+                latestKeyframe = candidate;
+            }
+        }
+        return turns.indexOf(turn) < turns.indexOf(latestKeyframe);
+    }
+
+    private static JSONObject systemMessage(String content) {
+        JSONObject message = new JSONObject();
+        message.put("role", "system");
+        message.put("content", content);
+        return message;
+    }
+
+    /**
+     * 粗略估算token数：中文约每字1个token，ASCII约每4个字符1个token
+     */
+    static int estimateTokens(String text) {
+        int ascii = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) < 128) {
+                ascii++;
+            } else {
+                other++;
+            }
+        }
+        return other + (ascii + 3) / 4;
+    }
+}
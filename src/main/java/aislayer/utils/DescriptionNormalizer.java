@@ -0,0 +1,156 @@
+package aislayer.utils;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 描述文本规范化
+ * 一次遍历完成原来 handleDescription 中二十次 replace 的工作：去掉NL、颜色标记(#g等)和空格，
+ * 把能量图标([E]等)换成"能量"，把卡牌的 !B!/!M!/!D! 换成基础数值。
+ * 标记不完整（单独的#、[、!，两边不是空格的NL，或者 !D!B! 这样首尾相接的数值标记）时结果取决于 replace 的先后顺序，
+ * 这种少见的描述改用原来的 replace 链，保证结果完全一致。
+ * 相同的(原始描述, 基础数值)直接返回上次的结果
+ */
+public class DescriptionNormalizer {
+
+    private static final int MEMO_SIZE = 1024;
+
+    private static final String[] ENERGY_ICONS = {"[E]", "[W]", "[R]", "[B]", "[P]", "[G]"};
+    private static final String[] COLOR_MARKS = {"#g", "#r", "#b", "#y", "#p"};
+
+    private static final Map<String, String> memo = new LinkedHashMap<String, String>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > MEMO_SIZE;
+        }
+    };
+
+    private static long hits = 0;
+    private static long misses = 0;
+
+    /**
+     * 规范化描述
+     * @param description 原始描述
+     * @param hasCard 是否替换卡牌数值
+     * @param baseBlock 基础格挡
+     * @param baseMagicNumber 基础特殊值
+     * @param baseDamage 基础伤害
+     * @return 规范化后的描述
+     */
+    public static String normalize(String description, boolean hasCard, int baseBlock, int baseMagicNumber, int baseDamage) {
+        String key = hasCard
+                ? description + '\u0000' + baseBlock + ',' + baseMagicNumber + ',' + baseDamage
+                : description;
+        synchronized (memo) {
+            String cached = memo.get(key);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+        }
+        String result = rewrite(description, hasCard, baseBlock, baseMagicNumber, baseDamage);
+        synchronized (memo) {
+            misses++;
+            memo.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * 单次遍历改写，遇到不完整的标记时改用 replace 链
+     */
+    static String rewrite(String description, boolean hasCard, int baseBlock, int baseMagicNumber, int baseDamage) {
+        int length = description.length();
+        StringBuilder result = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = description.charAt(i);
+            if (c == ' ') {
+                i++;
+                continue;
+            }
+            if (c == 'N' && i + 1 < length && description.charAt(i + 1) == 'L') {
+                // replace 链最先删除NL，两边不是空格时删除后可能拼出新的标记
+                if ((i > 0 && description.charAt(i - 1) != ' ') || (i + 2 < length && description.charAt(i + 2) != ' ')) {
+                    return replaceChain(description, hasCard, baseBlock, baseMagicNumber, baseDamage);
+                }
+                i += 2;
+                continue;
+            }
+            if (c == '#') {
+                if (i + 1 < length && isColor(description.charAt(i + 1))) {
+                    i += 2;
+                    continue;
+                }
+                return replaceChain(description, hasCard, baseBlock, baseMagicNumber, baseDamage);
+            }
+            if (c == '[') {
+                if (i + 2 < length && description.charAt(i + 2) == ']' && isEnergy(description.charAt(i + 1))) {
+                    result.append("能量");
+                    i += 3;
+                    continue;
+                }
+                return replaceChain(description, hasCard, baseBlock, baseMagicNumber, baseDamage);
+            }
+            if (hasCard && c == '!') {
+                // 结尾的!又是下一个标记的开头时，replace 链按 B、M、D 的顺序替换，不一定是从左到右
+                if (isVariable(description, i) && !isVariable(description, i + 2)) {
+                    char variable = description.charAt(i + 1);
+                    result.append(variable == 'B' ? baseBlock : variable == 'M' ? baseMagicNumber : baseDamage)
+                            .append("(基础)");
+                    i += 3;
+                    continue;
+                }
+                return replaceChain(description, hasCard, baseBlock, baseMagicNumber, baseDamage);
+            }
+            result.append(c);
+            i++;
+        }
+        return result.toString();
+    }
+
+    /**
+     * 原来 handleDescription 中的 replace 链，只用于标记不完整的描述
+     */
+    private static String replaceChain(String description, boolean hasCard, int baseBlock, int baseMagicNumber, int baseDamage) {
+        description = description.replace("NL", "");
+        if (hasCard) {
+            description = description.replace("!B!", baseBlock + "(基础)");
+            description = description.replace("!M!", baseMagicNumber + "(基础)");
+            description = description.replace("!D!", baseDamage + "(基础)");
+        }
+        for (String energy : ENERGY_ICONS) {
+            description = description.replace(energy, "能量");
+        }
+        for (String color : COLOR_MARKS) {
+            description = description.replace(color, "");
+        }
+        return description.replace(" ", "");
+    }
+
+    private static boolean isVariable(String description, int i) {
+        if (i + 2 >= description.length() || description.charAt(i) != '!' || description.charAt(i + 2) != '!') {
+            return false;
+        }
+        char variable = description.charAt(i + 1);
+        return variable == 'B' || variable == 'M' || variable == 'D';
+    }
+
+    private static boolean isColor(char c) {
+        return c == 'g' || c == 'r' || c == 'b' || c == 'y' || c == 'p';
+    }
+
+    private static boolean isEnergy(char c) {
+        return c == 'E' || c == 'W' || c == 'R' || c == 'B' || c == 'P' || c == 'G';
+    }
+
+    /**
+     * 获取缓存统计信息
+     * @return 统计信息
+     */
+    public static String getStats() {
+        synchronized (memo) {
+            return String.format("描述缓存: %d/%d, 命中: %d, 未命中: %d", memo.size(), MEMO_SIZE, hits, misses);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package aislayer.utils;
+
+import java.io.IOException;
+
+/**
+ * 流式决策在动作已经提前执行之后中断
+ * 不能换平台或重试，否则同一个动作会执行两次；路由和对冲遇到它时直接向上抛出
+ */
+public class DispatchedStreamException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DispatchedStreamException(IOException cause) {
+        super("流式响应中断，动作已执行: " + cause.getMessage(), cause);
+    }
+}
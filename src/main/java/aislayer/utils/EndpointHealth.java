@@ -0,0 +1,165 @@
+package aislayer.utils;
+
+import java.util.Arrays;
+
+/**
+ * 单个LLM平台的健康状态
+ * 按请求类型分别维护首字节时间的EWMA和最近的等待时间分布（读取超时取p99的倍数），
+ * 另外维护错误率的EWMA和熔断状态：
+ * 连续失败达到阈值后熔断（OPEN），一段时间后放行一个探测请求（HALF_OPEN），探测成功才恢复（CLOSED）
+ */
+public class EndpointHealth {
+
+    public enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final double ALPHA = Math.max(0.01, Math.min(1.0,
+            PerformanceConfig.getInt("router.ewma_alpha_percent", 30) / 100.0));
+    private static final int FAILURE_THRESHOLD = Math.max(1, PerformanceConfig.getInt("router.failure_threshold", 3));
+    private static final long OPEN_MILLIS = PerformanceConfig.getLong("router.open_millis", 30000);
+
+    // 读取超时 = 等待时间p99 × 倍数，限制在下限和调用方给的上限之间
+    private static final int TIMEOUT_MULTIPLIER_PERCENT = Math.max(100,
+            PerformanceConfig.getInt("network.timeout.p99_multiplier_percent", 200));
+    private static final int TIMEOUT_MIN_MS = PerformanceConfig.getInt("network.timeout.min_ms", 3000);
+    private static final int TIMEOUT_MIN_SAMPLES = PerformanceConfig.getInt("network.timeout.min_samples", 10);
+
+    // 各请求类型的首字节时间EWMA，小于0表示还没有样本
+    private final double[] latency = new double[LLMRouter.Kind.values().length];
+    // 各请求类型从发出请求到拿到第一份有效数据（流式为首个数据块，非流式为响应头）的时间
+    private final LatencyTracker[] waits = new LatencyTracker[LLMRouter.Kind.values().length];
+    private double errorRate = 0;
+    private int consecutiveFailures = 0;
+    private long successCount = 0;
+    private long failureCount = 0;
+
+    private State state = State.CLOSED;
+    private long openedAt = 0;
+    private boolean probing = false;
+    private long probeStartedAt = 0;
+
+    public EndpointHealth() {
+        Arrays.fill(latency, -1);
+        for (int i = 0; i < waits.length; i++) {
+            waits[i] = new LatencyTracker(128);
+        }
+    }
+
+    /**
+     * 记录一次成功
+     * @param kind 请求类型
+     * @param response 成功的响应
+     */
+    public synchronized void recordSuccess(LLMRouter.Kind kind, LLMClient.Response response) {
+        int index = kind.ordinal();
+        long latencyMs = response.ttfbMillis;
+        latency[index] = latency[index] < 0 ? latencyMs : ALPHA * latencyMs + (1 - ALPHA) * latency[index];
+        waits[index].record(Math.max(latencyMs, response.firstEventMillis));
+        errorRate = (1 - ALPHA) * errorRate;
+        consecutiveFailures = 0;
+        successCount++;
+        state = State.CLOSED;
+        probing = false;
+    }
+
+    /**
+     * 记录一次失败（网络异常或错误响应码）
+     */
+    public synchronized void recordFailure() {
+        errorRate = ALPHA + (1 - ALPHA) * errorRate;
+        consecutiveFailures++;
+        failureCount++;
+        // 探测失败或连续失败过多时熔断
+        if (state == State.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+        probing = false;
+    }
+
+    /**
+     * 请求没有得出结论（被对冲取消）时调用，不记录成功或失败；
+     * 如果它是半开状态下的探测请求，释放探测名额，让下一个请求继续探测
+     */
+    public synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            probing = false;
+        }
+    }
+
+    /**
+     * 当前是否可以接收请求（不改变状态，用于路由排序）
+     */
+    public synchronized boolean isAvailable() {
+        long now = System.currentTimeMillis();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return now - openedAt >= OPEN_MILLIS;
+            default:
+                return !probing || now - probeStartedAt >= OPEN_MILLIS;
+        }
+    }
+
+    /**
+     * 真正发送请求前调用；熔断到期后只放行一个探测请求
+     * @return 是否允许发送
+     */
+    public synchronized boolean allowRequest() {
+        if (!isAvailable()) {
+            return false;
+        }
+        if (state != State.CLOSED) {
+            state = State.HALF_OPEN;
+            probing = true;
+            probeStartedAt = System.currentTimeMillis();
+        }
+        return true;
+    }
+
+    /**
+     * 根据最近的等待时间计算读取超时
+     * @param kind 请求类型
+     * @param maxMs 上限，样本不足时直接使用
+     * @return 毫秒
+     */
+    public int readTimeoutMillis(LLMRouter.Kind kind, int maxMs) {
+        LatencyTracker tracker = waits[kind.ordinal()];
+        if (tracker.size() < TIMEOUT_MIN_SAMPLES) {
+            return maxMs;
+        }
+        long timeout = tracker.percentile(99) * TIMEOUT_MULTIPLIER_PERCENT / 100;
+        return (int) Math.min(maxMs, Math.max(TIMEOUT_MIN_MS, timeout));
+    }
+
+    /**
+     * 路由评分，越小越好：首字节时间按错误率加权
+     * @param kind 请求类型
+     * @param unknownLatency 没有样本时假定的首字节时间
+     */
+    public synchronized double score(LLMRouter.Kind kind, double unknownLatency) {
+        double value = latency[kind.ordinal()];
+        return (value < 0 ? unknownLatency : value) * (1 + 4 * errorRate);
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder text = new StringBuilder(state.name());
+        for (LLMRouter.Kind kind : LLMRouter.Kind.values()) {
+            double value = latency[kind.ordinal()];
+            text.append(", ").append(kind.getDescription()).append(value < 0 ? "-" : Math.round(value) + "ms");
+            long p99 = waits[kind.ordinal()].percentile(99);
+            if (p99 >= 0) {
+                text.append("(p99 ").append(p99).append("ms)");
+            }
+        }
+        return text.append(String.format(", 错误率%.0f%%, 成功%d, 失败%d", errorRate * 100, successCount, failureCount))
+                .toString();
+    }
+}
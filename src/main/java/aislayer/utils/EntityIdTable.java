@@ -0,0 +1,49 @@
+package aislayer.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 实体ID驻留表
+ * 把卡牌ID、遗物ID、药水ID、关键词等字符串映射为从0开始的小整数，
+ * 配合 BitSet 做"已知/未知"判断，一次按64位整字批量比较。
+ * 映射在整个游戏进程内不变，数量受游戏内容总数限制
+ */
+public class EntityIdTable {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * 获取字符串对应的整数ID，第一次出现时分配新ID
+     * @param key 字符串
+     * @return 整数ID
+     */
+    public synchronized int intern(String key) {
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = names.size();
+            ids.put(key, id);
+            names.add(key);
+        }
+        return id;
+    }
+
+    /**
+     * 获取整数ID对应的字符串
+     * @param id 整数ID
+     * @return 字符串，不存在时返回null
+     */
+    public synchronized String nameOf(int id) {
+        return id >= 0 && id < names.size() ? names.get(id) : null;
+    }
+
+    /**
+     * 已分配的ID数量
+     */
+    public synchronized int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,89 @@
+package aislayer.utils;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 本地兜底解说
+ * 所有LLM平台都熔断或请求失败时，按行动类型用模板生成一句解说，不访问网络，也不写入解说缓存
+ */
+public class FallbackCommentary {
+
+    private static final String[] CARD_LINES = {
+            "%s安排上！",
+            "这张%s打得漂亮！",
+            "%s出手，稳！",
+            "噶人们，看这张%s！"
+    };
+    private static final String[] CARD_TARGET_LINES = {
+            "%s直接招呼%s！",
+            "%s糊在%s脸上！",
+            "看我一张%s教%s做人！"
+    };
+    private static final String[] POTION_LINES = {
+            "%s喝了，关键时刻不能省！",
+            "掏出%s，这波稳了！"
+    };
+    private static final String[] END_TURN_LINES = {
+            "这回合就到这，看怪物怎么接！",
+            "回合结束，稳扎稳打！",
+            "先过一回合，下回合再秀！"
+    };
+    private static final String[] MONSTER_INTRO_LINES = {
+            "%s来了，噶人们准备好！",
+            "对面是%s，这把有得打！"
+    };
+    private static final String[] GENERIC_LINES = {
+            "精彩的行动！",
+            "这波操作可以！",
+            "稳住，我们能赢！"
+    };
+
+    /**
+     * 生成兜底解说
+     * @param actionInfo 行动信息
+     * @return 解说内容
+     */
+    public static String forAction(JSONObject actionInfo) {
+        String actionType = actionInfo.optString("行动类型", "");
+        switch (actionType) {
+            case "打牌": {
+                JSONObject card = actionInfo.optJSONObject("使用的卡牌");
+                String cardName = card == null ? "" : card.optString("名称", "");
+                if (cardName.isEmpty()) {
+                    break;
+                }
+                String target = actionInfo.optString("目标", "");
+                if (!target.isEmpty()) {
+                    return String.format(pick(CARD_TARGET_LINES), cardName, target);
+                }
+                return String.format(pick(CARD_LINES), cardName);
+            }
+            case "用药水": {
+                String potion = actionInfo.optString("使用的药水", "");
+                if (!potion.isEmpty()) {
+                    return String.format(pick(POTION_LINES), potion);
+                }
+                break;
+            }
+            case "结束回合":
+                return pick(END_TURN_LINES);
+            case "怪物介绍": {
+                String monsters = actionInfo.optString("怪物信息", "");
+                if (!monsters.isEmpty()) {
+                    // 去掉详细介绍中的血量
+                    return String.format(pick(MONSTER_INTRO_LINES), monsters.replaceAll("\\(\\d+/\\d+ HP\\)", ""));
+                }
+                break;
+            }
+            default:
+                break;
+        }
+        return pick(GENERIC_LINES);
+    }
+
+    private static String pick(String[] lines) {
+        return lines[ThreadLocalRandom.current().nextInt(lines.length)];
+    }
+}
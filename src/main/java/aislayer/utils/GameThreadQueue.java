@@ -0,0 +1,104 @@
+package aislayer.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 游戏线程命令队列
+ * AI线程（决策、解说、定时任务）不直接修改游戏状态，而是把操作提交到这里；
+ * 游戏线程每帧在输入更新之后取出执行，每帧最多执行 game.command_budget_ms 毫秒，剩下的留到下一帧，避免卡帧。
+ * 多个线程提交、只有游戏线程消费，使用无锁的 ConcurrentLinkedQueue，提交方不会阻塞游戏线程
+ */
+public class GameThreadQueue {
+
+    public static final Logger logger = LogManager.getLogger(GameThreadQueue.class.getName());
+
+    private static final long BUDGET_NANOS = Math.max(1, PerformanceConfig.getLong("game.command_budget_ms", 4)) * 1_000_000L;
+
+    private static final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+
+    // 第一次执行 drain 的线程就是游戏线程
+    private static volatile Thread gameThread = null;
+
+    private static final AtomicLong executed = new AtomicLong();
+    private static final AtomicLong failed = new AtomicLong();
+    private static final AtomicLong deferredFrames = new AtomicLong();
+    private static volatile long maxWaitMillis = 0;
+
+    private static class Command {
+        final Runnable task;
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final long submittedAt = System.currentTimeMillis();
+
+        Command(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    /**
+     * 提交一个修改游戏状态的操作，按提交顺序在游戏线程执行；
+     * 在游戏线程上调用且没有排队的操作时直接执行，否则排到队尾，不会插到之前提交的操作前面
+     * @param task 操作
+     * @return 执行完成（或失败）时结束
+     */
+    public static CompletableFuture<Void> submit(Runnable task) {
+        Command command = new Command(task);
+        if (isGameThread() && commands.isEmpty()) {
+            run(command);
+        } else {
+            commands.add(command);
+        }
+        return command.future;
+    }
+
+    public static boolean isGameThread() {
+        return Thread.currentThread() == gameThread;
+    }
+
+    /**
+     * 每帧由游戏线程调用，执行排队的操作直到队列为空或用完本帧的时间预算（至少执行一个）
+     */
+    public static void drain() {
+        gameThread = Thread.currentThread();
+        if (commands.isEmpty()) {
+            return;
+        }
+        long start = System.nanoTime();
+        Command command;
+        while ((command = commands.poll()) != null) {
+            run(command);
+            if (System.nanoTime() - start >= BUDGET_NANOS) {
+                if (!commands.isEmpty()) {
+                    deferredFrames.incrementAndGet();
+                }
+                break;
+            }
+        }
+    }
+
+    private static void run(Command command) {
+        maxWaitMillis = Math.max(maxWaitMillis, System.currentTimeMillis() - command.submittedAt);
+        try {
+            command.task.run();
+            executed.incrementAndGet();
+            command.future.complete(null);
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            logger.error("游戏线程命令执行失败", e);
+            command.future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * 获取队列统计信息
+     */
+    public static String getStats() {
+        return String.format("游戏线程命令: 执行%d, 失败%d, 排队%d, 超预算帧%d, 最长等待%dms",
+                executed.get(), failed.get(), commands.size(), deferredFrames.get(), maxWaitMillis);
+    }
+}
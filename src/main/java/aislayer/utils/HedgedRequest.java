@@ -0,0 +1,212 @@
+package aislayer.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+
+/**
+ * 对冲请求
+ * 先向主平台发送请求，如果超过主平台最近首字节时间的分位数（默认p90）还没有收到响应头，
+ * 就向备用平台发送同样的请求；哪边先返回成功的响应头就用哪边，另一边立即断开。
+ * 主平台在对冲之前失败，或者响应头胜出后在流式读取中失败（动作尚未执行）时，用一个新的请求改用备用平台。
+ * 两边执行同一个请求逻辑，只采用没有被取消的一方的结果，被取消一方的成功响应或异常都直接丢弃
+ */
+public class HedgedRequest {
+
+    public static final Logger logger = LogManager.getLogger(HedgedRequest.class.getName());
+
+    // 用哪个分位数的首字节时间作为对冲等待时间
+    private static final int PERCENTILE = Math.max(50, Math.min(99, PerformanceConfig.getInt("hedge.percentile", 90)));
+    // 对冲等待时间下限，避免在平台很快时也频繁发双份请求
+    private static final long MIN_DELAY_MS = PerformanceConfig.getLong("hedge.min_delay_ms", 500);
+    // 样本不足时的对冲等待时间
+    private static final long INITIAL_DELAY_MS = PerformanceConfig.getLong("hedge.initial_delay_ms", 3000);
+    private static final int MIN_SAMPLES = PerformanceConfig.getInt("hedge.min_samples", 8);
+
+    private static final AtomicLong requests = new AtomicLong();
+    private static final AtomicLong hedged = new AtomicLong();
+    private static final AtomicLong secondaryWins = new AtomicLong();
+
+    /**
+     * 向某个平台发送一次请求
+     */
+    public interface Attempt {
+        LLMClient.Response execute(LLMEndpoint endpoint, LLMClient.Call call) throws IOException;
+    }
+
+    private static class Outcome {
+        final LLMEndpoint endpoint;
+        final LLMClient.Call call;
+        final LLMClient.Response response;
+        final IOException error;
+
+        Outcome(LLMEndpoint endpoint, LLMClient.Call call, LLMClient.Response response, IOException error) {
+            this.endpoint = endpoint;
+            this.call = call;
+            this.response = response;
+            this.error = error;
+        }
+    }
+
+    /**
+     * 发送请求，有备用平台时按需对冲
+     * @param primary 主平台
+     * @param secondary 备用平台，null表示不对冲
+     * @param attempt 请求逻辑
+     * @return 先成功的响应；都失败时返回最后一个错误响应
+     */
+    public static LLMClient.Response execute(LLMEndpoint primary, LLMEndpoint secondary, Attempt attempt)
+            throws IOException {
+        requests.incrementAndGet();
+        if (secondary == null) {
+            LLMClient.Call call = new LLMClient.Call();
+            call.setHeaderGate(response -> {
+                primary.ttfb.record(response.ttfbMillis);
+                return true;
+            });
+            return attempt.execute(primary, call);
+        }
+
+        AtomicReference<LLMClient.Call> winner = new AtomicReference<>();
+        BlockingQueue<Outcome> outcomes = new LinkedBlockingQueue<>();
+        LLMClient.Call primaryCall = new LLMClient.Call();
+        LLMClient.Call secondaryCall = new LLMClient.Call();
+        primaryCall.setHeaderGate(gate(primary, primaryCall, secondaryCall, winner));
+        secondaryCall.setHeaderGate(gate(secondary, secondaryCall, primaryCall, winner));
+
+        start(primary, primaryCall, attempt, outcomes);
+        int running = 1;
+        boolean secondaryStarted = false;
+        LLMClient.Call succeeded = null;
+        try {
+            long delay = hedgeDelay(primary);
+            // 等待期间主平台失败或返回错误码，同样立即改用备用平台
+            if (!primaryCall.awaitHeaders(delay) || winner.get() == null) {
+                logger.info("{} {}ms内没有响应，同时请求{}", primary, delay, secondary);
+                hedged.incrementAndGet();
+                start(secondary, secondaryCall, attempt, outcomes);
+                running++;
+                secondaryStarted = true;
+            }
+
+            LLMClient.Response lastResponse = null;
+            IOException lastError = null;
+            while (running > 0) {
+                Outcome outcome = outcomes.take();
+                running--;
+                // 被取消的一方无论返回什么都不采用：两边共用同一个请求逻辑，输家的结果不可信
+                if (outcome.call.isCancelled()) {
+                    continue;
+                }
+                if (outcome.response != null && outcome.response.isSuccess()) {
+                    if (outcome.endpoint == secondary) {
+                        secondaryWins.incrementAndGet();
+                    }
+                    succeeded = outcome.call;
+                    return outcome.response;
+                }
+                if (outcome.error instanceof DispatchedStreamException) {
+                    // 胜出的一方已经执行了动作，不能再改用另一边
+                    throw outcome.error;
+                }
+                if (outcome.response != null) {
+                    lastResponse = outcome.response;
+                } else {
+                    lastError = outcome.error;
+                }
+                if (!secondaryStarted) {
+                    logger.info("{}请求失败，改用{}", primary, secondary);
+                    // 主平台的响应头胜出时已经取消了原来的备用请求，改用一个新的请求；主平台已经结束，不再需要竞争
+                    secondaryCall = new LLMClient.Call();
+                    secondaryCall.setHeaderGate(response -> {
+                        secondary.ttfb.record(response.ttfbMillis);
+                        return true;
+                    });
+                    start(secondary, secondaryCall, attempt, outcomes);
+                    running++;
+                    secondaryStarted = true;
+                }
+            }
+            if (lastResponse != null) {
+                return lastResponse;
+            }
+            throw lastError != null ? lastError : new IOException("对冲请求均已取消");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("等待对冲请求时被中断");
+        } finally {
+            // 已经有结果（或放弃等待）时，取消仍在进行的请求；成功的一方不能断开，连接要回到keep-alive池
+            if (primaryCall != succeeded) {
+                primaryCall.cancel();
+            }
+            if (secondaryCall != succeeded) {
+                secondaryCall.cancel();
+            }
+        }
+    }
+
+    /**
+     * 响应头检查：记录首字节时间，第一个成功的一方胜出并取消另一方
+     */
+    private static Predicate<LLMClient.Response> gate(LLMEndpoint endpoint, LLMClient.Call self, LLMClient.Call other,
+                                                      AtomicReference<LLMClient.Call> winner) {
+        return response -> {
+            endpoint.ttfb.record(response.ttfbMillis);
+            if (!response.isSuccess()) {
+                // 错误响应照常读完，交给调用方判断
+                return true;
+            }
+            if (winner.compareAndSet(null, self)) {
+                other.cancel();
+                return true;
+            }
+            return winner.get() == self;
+        };
+    }
+
+    private static void start(LLMEndpoint endpoint, LLMClient.Call call, Attempt attempt, BlockingQueue<Outcome> outcomes) {
+        try {
+            AIExecutor.submitRequest(() -> {
+                try {
+                    outcomes.add(new Outcome(endpoint, call, attempt.execute(endpoint, call), null));
+                } catch (IOException e) {
+                    outcomes.add(new Outcome(endpoint, call, null, e));
+                } catch (RuntimeException e) {
+                    outcomes.add(new Outcome(endpoint, call, null, new IOException(e)));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 没有发出去的一路不计入平台健康状况，直接作为失败结果
+            outcomes.add(new Outcome(endpoint, call, null, new IOException(e.getMessage(), e)));
+        }
+    }
+
+    /**
+     * 计算对冲等待时间
+     * @param endpoint 主平台
+     * @return 毫秒
+     */
+    static long hedgeDelay(LLMEndpoint endpoint) {
+        if (endpoint.ttfb.size() < MIN_SAMPLES) {
+            return INITIAL_DELAY_MS;
+        }
+        return Math.max(MIN_DELAY_MS, endpoint.ttfb.percentile(PERCENTILE));
+    }
+
+    /**
+     * 获取对冲统计信息
+     * @return 统计信息
+     */
+    public static String getStats() {
+        return String.format("对冲请求: %d次请求, 触发对冲%d次, 备用平台胜出%d次",
+                requests.get(), hedged.get(), secondaryWins.get());
+    }
+}
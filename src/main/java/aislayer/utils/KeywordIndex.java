@@ -0,0 +1,178 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.helpers.GameDictionary;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 关键词索引
+ * 用 GameDictionary.keywords 预先构建 Aho-Corasick 自动机，每段描述进入 handleDescription 时
+ * 扫描一遍就能找出其中出现的全部关键词；尚未告诉AI的关键词放进待发送队列，
+ * 不再需要每次决策时把所有描述拼成字符串逐个关键词 contains
+ */
+public class KeywordIndex {
+
+    private static final int SCAN_MEMO_SIZE = 1024;
+
+    /**
+     * 自动机节点
+     */
+    private static class Node {
+        final Map<Character, Node> next = new HashMap<>();
+        Node fail;
+        // 以该节点结尾的关键词（含经由失败链可达的）
+        final List<String> outputs = new ArrayList<>();
+    }
+
+    private static Node root;
+    // 构建时的关键词数量，模组后续添加了关键词时重新构建
+    private static int builtSize = -1;
+
+    // 同一段描述只扫描一次
+    private static final Map<String, List<String>> scanMemo = new LinkedHashMap<String, List<String>>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, List<String>> eldest) {
+            return size() > SCAN_MEMO_SIZE;
+        }
+    };
+
+    private static final EntityIdTable ids = new EntityIdTable();
+    // 已经告诉AI的关键词
+    private static final BitSet known = new BitSet();
+    // 出现过但还没告诉AI的关键词
+    private static final BitSet pendingBits = new BitSet();
+    private static final ArrayDeque<Integer> pending = new ArrayDeque<>();
+
+    /**
+     * 记录一段描述中出现的关键词
+     * @param description 规范化后的描述
+     */
+    public static synchronized void observe(String description) {
+        for (String keyword : scan(description)) {
+            int id = ids.intern(keyword);
+            if (!known.get(id) && !pendingBits.get(id)) {
+                pendingBits.set(id);
+                pending.add(id);
+            }
+        }
+    }
+
+    /**
+     * 取出下一个待发送的关键词并标记为已知
+     * @return 没有时返回null
+     */
+    public static synchronized String pollPending() {
+        Integer id = pending.poll();
+        if (id == null) {
+            return null;
+        }
+        pendingBits.clear(id);
+        known.set(id);
+        return ids.nameOf(id);
+    }
+
+    /**
+     * 获取关键词的原始描述
+     * @param keyword 关键词
+     * @return 描述，不存在时返回空字符串
+     */
+    public static String getDescription(String keyword) {
+        Map<String, String> keywords = GameDictionary.keywords;
+        String description = keywords == null ? null : keywords.get(keyword);
+        return description == null ? "" : description;
+    }
+
+    /**
+     * 清空已知和待发送的关键词
+     */
+    public static synchronized void reset() {
+        known.clear();
+        pendingBits.clear();
+        pending.clear();
+    }
+
+    /**
+     * 扫描描述，返回其中出现的关键词（去重，按首次出现顺序）
+     * @param text 文本
+     * @return 关键词列表
+     */
+    static synchronized List<String> scan(String text) {
+        ensureBuilt();
+        List<String> cached = scanMemo.get(text);
+        if (cached != null) {
+            return cached;
+        }
+        LinkedHashSet<String> found = new LinkedHashSet<>();
+        Node node = root;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            while (node != root && !node.next.containsKey(c)) {
+                node = node.fail;
+            }
+            Node next = node.next.get(c);
+            node = next == null ? root : next;
+            found.addAll(node.outputs);
+        }
+        List<String> result = found.isEmpty()
+                ? Collections.<String>emptyList()
+                : Collections.unmodifiableList(new ArrayList<>(found));
+        scanMemo.put(text, result);
+        return result;
+    }
+
+    /**
+     * 构建自动机
+     */
+    private static void ensureBuilt() {
+        Map<String, String> keywords = GameDictionary.keywords;
+        int size = keywords == null ? 0 : keywords.size();
+        if (root != null && size == builtSize) {
+            return;
+        }
+        root = new Node();
+        builtSize = size;
+        scanMemo.clear();
+        if (keywords == null) {
+            return;
+        }
+        for (String keyword : keywords.keySet()) {
+            if (keyword == null || keyword.isEmpty()) {
+                continue;
+            }
+            Node node = root;
+            for (int i = 0; i < keyword.length(); i++) {
+                node = node.next.computeIfAbsent(keyword.charAt(i), k -> new Node());
+            }
+            node.outputs.add(keyword);
+        }
+        // 按层建立失败指针
+        ArrayDeque<Node> queue = new ArrayDeque<>();
+        for (Node child : root.next.values()) {
+            child.fail = root;
+            queue.add(child);
+        }
+        while (!queue.isEmpty()) {
+            Node node = queue.poll();
+            for (Map.Entry<Character, Node> entry : node.next.entrySet()) {
+                char c = entry.getKey();
+                Node child = entry.getValue();
+                Node fail = node.fail;
+                while (fail != root && !fail.next.containsKey(c)) {
+                    fail = fail.fail;
+                }
+                Node target = fail.next.get(c);
+                child.fail = target == null || target == child ? root : target;
+                child.outputs.addAll(child.fail.outputs);
+                queue.add(child);
+            }
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.cards.AbstractCard;
+import com.megacrit.cardcrawl.potions.AbstractPotion;
+import com.megacrit.cardcrawl.relics.AbstractRelic;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 卡牌、遗物、药水的知识登记表
+ * 代替原来每次 getInfo 都整堆 addAll 的 allCards/allRelics/allPotions 列表：
+ * 按ID去重，只记录还没告诉AI的条目，取出时只遍历新增的部分。
+ * 只开解说不开AI决策时没有人取出，待发送条目也有上限，不会无限增长
+ */
+public class KnowledgeRegistry {
+
+    private static final int MAX_PENDING = Math.max(16, PerformanceConfig.getInt("knowledge.pending.max_size", 256));
+
+    /**
+     * 一类条目
+     * 已知和待发送都用 BitSet 记录，一批条目（比如整副牌组）先收集成 BitSet，
+     * 再与已知集合做 andNot 得到新条目
+     */
+    static class Category<T> {
+        private final Function<T, String> keyOf;
+        private final EntityIdTable table = new EntityIdTable();
+        private final BitSet known = new BitSet();
+        private final BitSet pendingBits = new BitSet();
+        // 按首次出现顺序保存待发送条目
+        private final LinkedHashMap<Integer, T> pending = new LinkedHashMap<>();
+        // 批量登记时按ID暂存条目，批次位集每次用完清空后复用
+        private Object[] slots = new Object[64];
+        private final BitSet batch = new BitSet();
+        private final BitSet fresh = new BitSet();
+        private long dropped = 0;
+
+        Category(Function<T, String> keyOf) {
+            this.keyOf = keyOf;
+        }
+
+        synchronized void offer(T item) {
+            if (item == null) {
+                return;
+            }
+            int id = table.intern(keyOf.apply(item));
+            if (!known.get(id) && !pendingBits.get(id)) {
+                addPending(id, item);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void offerAll(Iterable<? extends T> items) {
+            try {
+                for (T item : items) {
+                    if (item == null) {
+                        continue;
+                    }
+                    int id = table.intern(keyOf.apply(item));
+                    if (!batch.get(id)) {
+                        batch.set(id);
+                        if (id >= slots.length) {
+                            slots = Arrays.copyOf(slots, Math.max(id + 1, slots.length * 2));
+                        }
+                        slots[id] = item;
+                    }
+                }
+                fresh.or(batch);
+                fresh.andNot(known);
+                fresh.andNot(pendingBits);
+                for (int id = fresh.nextSetBit(0); id >= 0; id = fresh.nextSetBit(id + 1)) {
+                    addPending(id, (T) slots[id]);
+                }
+            } finally {
+                // 不持有游戏对象的引用
+                for (int id = batch.nextSetBit(0); id >= 0; id = batch.nextSetBit(id + 1)) {
+                    slots[id] = null;
+                }
+                batch.clear();
+                fresh.clear();
+            }
+        }
+
+        private void addPending(int id, T item) {
+            if (pending.size() >= MAX_PENDING) {
+                // 丢弃最早的待发送条目
+                Iterator<Integer> eldest = pending.keySet().iterator();
+                pendingBits.clear(eldest.next());
+                eldest.remove();
+                dropped++;
+            }
+            pending.put(id, item);
+            pendingBits.set(id);
+        }
+
+        synchronized List<T> drain() {
+            List<T> items = new ArrayList<>(pending.values());
+            known.or(pendingBits);
+            pendingBits.clear();
+            pending.clear();
+            return items;
+        }
+
+        synchronized void reset() {
+            known.clear();
+            pendingBits.clear();
+            pending.clear();
+        }
+
+        synchronized String stats(String name) {
+            return String.format("%s(已知%d, 待发送%d, 丢弃%d)", name, known.cardinality(), pending.size(), dropped);
+        }
+    }
+
+    private static final Category<AbstractCard> cards = new Category<>(card -> card.cardID + "+" + card.timesUpgraded);
+    private static final Category<AbstractRelic> relics = new Category<>(relic -> relic.relicId);
+    private static final Category<AbstractPotion> potions = new Category<>(potion -> potion.ID);
+
+    public static void offerCard(AbstractCard card) {
+        cards.offer(card);
+    }
+
+    public static void offerCards(Iterable<? extends AbstractCard> group) {
+        cards.offerAll(group);
+    }
+
+    public static void offerRelic(AbstractRelic relic) {
+        relics.offer(relic);
+    }
+
+    public static void offerRelics(Iterable<? extends AbstractRelic> group) {
+        relics.offerAll(group);
+    }
+
+    public static void offerPotion(AbstractPotion potion) {
+        potions.offer(potion);
+    }
+
+    public static void offerPotions(Iterable<? extends AbstractPotion> group) {
+        potions.offerAll(group);
+    }
+
+    /**
+     * 取出还没告诉AI的卡牌，并标记为已知
+     */
+    public static List<AbstractCard> drainCards() {
+        return cards.drain();
+    }
+
+    /**
+     * 取出还没告诉AI的遗物，并标记为已知
+     */
+    public static List<AbstractRelic> drainRelics() {
+        return relics.drain();
+    }
+
+    /**
+     * 取出还没告诉AI的药水，并标记为已知
+     */
+    public static List<AbstractPotion> drainPotions() {
+        return potions.drain();
+    }
+
+    /**
+     * 清空登记表
+     */
+    public static void reset() {
+        cards.reset();
+        relics.reset();
+        potions.reset();
+    }
+
+    /**
+     * 获取登记表统计信息
+     * @return 统计信息
+     */
+    public static String getStats() {
+        return "知识登记: " + cards.stats("卡牌") + ", " + relics.stats("遗物") + ", " + potions.stats("药水");
+    }
+}
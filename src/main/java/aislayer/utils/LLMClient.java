@@ -0,0 +1,462 @@
+package aislayer.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * 共享的LLM HTTP客户端，决策和解说请求都经过这里
+ * 复用JDK自带的keep-alive连接池：每次请求都把响应流读完并关闭（不调用disconnect），
+ * 这样底层socket会回到连接池，下一次请求可以跳过DNS、TCP和TLS握手
+ * 成功的非流式响应直接从输入流中提取需要的字段（见 {@link ResponseExtractor}），不再整体读成字符串
+ */
+public class LLMClient {
+
+    public static final Logger logger = LogManager.getLogger(LLMClient.class.getName());
+
+    // 建立连接耗时低于该值时估计为复用了已有连接（新连接至少要经过TCP握手）；
+    // 局域网或本机代理上新建连接也可能低于该值，所以复用统计只是估计值，会偏高
+    private static final long REUSE_THRESHOLD_NANOS = 3_000_000L;
+
+    // 统计信息
+    private static final AtomicLong requestCount = new AtomicLong();
+    private static final AtomicLong reusedCount = new AtomicLong();
+    private static final AtomicLong totalTtfbMillis = new AtomicLong();
+    private static volatile long lastTtfbMillis = 0;
+
+    static {
+        // 确保keep-alive开启，并适当放大每个主机的空闲连接数
+        if (System.getProperty("http.keepAlive") == null) {
+            System.setProperty("http.keepAlive", "true");
+        }
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", "8");
+        }
+    }
+
+    /**
+     * 响应结果
+     */
+    public static class Response {
+        public int code;
+        public String body;
+        public long ttfbMillis;
+        public long totalMillis;
+        // 按建立连接耗时估计，不是连接池的实际结果
+        public boolean reused;
+        public boolean streamed;
+        public long firstEventMillis;
+        // 成功的非流式响应提取出的内容，此时body为空
+        public ResponseExtractor.Result extracted;
+        // 错误响应的 Retry-After（毫秒），没有时为-1
+        public long retryAfterMillis = -1;
+
+        public boolean isSuccess() {
+            return code == 200;
+        }
+    }
+
+    /**
+     * 发送POST请求并读取完整响应
+     * @param apiUrl 请求地址
+     * @param apiKey API密钥
+     * @param body 请求体
+     * @param connectTimeoutMs 连接超时（毫秒，0表示不限）
+     * @param readTimeoutMs 读取超时（毫秒，0表示不限）
+     * @return 响应结果（200时内容在extracted中，非200时body为错误流内容）
+     */
+    public static Response post(String apiUrl, String apiKey, String body, int connectTimeoutMs, int readTimeoutMs)
+            throws IOException {
+        return post(apiUrl, apiKey, body.getBytes(StandardCharsets.UTF_8), connectTimeoutMs, readTimeoutMs);
+    }
+
+    /**
+     * 发送POST请求并读取完整响应
+     * @param body 已编码为UTF-8的请求体
+     */
+    public static Response post(String apiUrl, String apiKey, byte[] body, int connectTimeoutMs, int readTimeoutMs)
+            throws IOException {
+        return post(apiUrl, apiKey, body, connectTimeoutMs, readTimeoutMs, null);
+    }
+
+    /**
+     * 发送可取消的POST请求并读取完整响应
+     * @param call 请求句柄，可以为null
+     */
+    public static Response post(String apiUrl, String apiKey, byte[] body, int connectTimeoutMs, int readTimeoutMs,
+                                Call call) throws IOException {
+        try {
+            long start = System.nanoTime();
+            HttpURLConnection connection = openConnection(apiUrl, apiKey, connectTimeoutMs, readTimeoutMs);
+            if (call != null) {
+                call.attach(connection);
+            }
+
+            Response response = new Response();
+            response.reused = connect(connection);
+
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(body);
+            }
+
+            // getResponseCode会阻塞到响应头到达，即首字节时间
+            response.code = connection.getResponseCode();
+            response.ttfbMillis = (System.nanoTime() - start) / 1_000_000L;
+            if (response.code != 200) {
+                response.retryAfterMillis = parseRetryAfter(connection.getHeaderField("Retry-After"));
+            }
+            if (call != null && !call.admit(response)) {
+                throw Call.cancelled();
+            }
+
+            readBody(connection, response);
+            response.totalMillis = (System.nanoTime() - start) / 1_000_000L;
+
+            record(response);
+            return response;
+        } finally {
+            if (call != null) {
+                call.finish();
+            }
+        }
+    }
+
+    /**
+     * 流式响应回调，每收到一条SSE的data内容调用一次
+     */
+    public interface StreamHandler {
+        void onData(String data) throws Exception;
+    }
+
+    /**
+     * 发送流式POST请求（请求体需带 "stream": true），逐条回调SSE数据
+     * 如果服务端没有返回event-stream，则退化为普通响应，内容放在extracted中
+     * @param apiUrl 请求地址
+     * @param apiKey API密钥
+     * @param body 请求体
+     * @param connectTimeoutMs 连接超时（毫秒，0表示不限）
+     * @param readTimeoutMs 两次数据之间的读取超时（毫秒，0表示不限）
+     * @param handler SSE数据回调
+     * @return 响应结果（流式时body为空，streamed为true）
+     */
+    public static Response postStream(String apiUrl, String apiKey, String body, int connectTimeoutMs, int readTimeoutMs,
+                                      StreamHandler handler) throws IOException {
+        return postStream(apiUrl, apiKey, body.getBytes(StandardCharsets.UTF_8), connectTimeoutMs, readTimeoutMs, handler);
+    }
+
+    /**
+     * 发送流式POST请求
+     * @param body 已编码为UTF-8的请求体
+     */
+    public static Response postStream(String apiUrl, String apiKey, byte[] body, int connectTimeoutMs, int readTimeoutMs,
+                                      StreamHandler handler) throws IOException {
+        return postStream(apiUrl, apiKey, body, connectTimeoutMs, readTimeoutMs, handler, null);
+    }
+
+    /**
+     * 发送可取消的流式POST请求
+     * 只有通过了请求句柄的响应头检查，才会开始回调SSE数据
+     * @param call 请求句柄，可以为null
+     */
+    public static Response postStream(String apiUrl, String apiKey, byte[] body, int connectTimeoutMs, int readTimeoutMs,
+                                      StreamHandler handler, Call call) throws IOException {
+        try {
+            long start = System.nanoTime();
+            HttpURLConnection connection = openConnection(apiUrl, apiKey, connectTimeoutMs, readTimeoutMs);
+            connection.setRequestProperty("Accept", "text/event-stream");
+            if (call != null) {
+                call.attach(connection);
+            }
+
+            Response response = new Response();
+            response.reused = connect(connection);
+
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(body);
+            }
+
+            response.code = connection.getResponseCode();
+            response.ttfbMillis = (System.nanoTime() - start) / 1_000_000L;
+            if (response.code != 200) {
+                response.retryAfterMillis = parseRetryAfter(connection.getHeaderField("Retry-After"));
+            }
+            if (call != null && !call.admit(response)) {
+                throw Call.cancelled();
+            }
+
+            String contentType = connection.getContentType();
+            if (response.code != 200 || contentType == null || !contentType.startsWith("text/event-stream")) {
+                readBody(connection, response);
+            } else {
+                response.streamed = true;
+                response.body = "";
+                readEvents(connection.getInputStream(), handler, response, start);
+            }
+            response.totalMillis = (System.nanoTime() - start) / 1_000_000L;
+
+            record(response);
+            return response;
+        } finally {
+            if (call != null) {
+                call.finish();
+            }
+        }
+    }
+
+    /**
+     * 可取消的请求句柄
+     * 对冲请求时两边各持有一个：收到响应头时由headerGate决定是否继续读取，输掉的一方直接断开连接
+     */
+    public static class Call {
+        private final CountDownLatch headers = new CountDownLatch(1);
+        private volatile HttpURLConnection connection;
+        private volatile boolean cancelled;
+        // 收到响应头时回调，返回false表示放弃本次请求
+        private volatile Predicate<Response> headerGate;
+
+        public void setHeaderGate(Predicate<Response> headerGate) {
+            this.headerGate = headerGate;
+        }
+
+        /**
+         * 取消请求，正在阻塞的读写会以IOException结束
+         */
+        public void cancel() {
+            cancelled = true;
+            HttpURLConnection current = connection;
+            if (current != null) {
+                current.disconnect();
+            }
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 等待响应头到达（或请求提前结束）
+         * @param timeoutMs 最长等待时间（毫秒）
+         * @return 超时前响应头已到达或请求已结束返回true
+         */
+        public boolean awaitHeaders(long timeoutMs) throws InterruptedException {
+            return headers.await(timeoutMs, TimeUnit.MILLISECONDS);
+        }
+
+        void attach(HttpURLConnection connection) throws IOException {
+            this.connection = connection;
+            if (cancelled) {
+                connection.disconnect();
+                throw cancelled();
+            }
+        }
+
+        boolean admit(Response response) {
+            try {
+                Predicate<Response> gate = headerGate;
+                return !cancelled && (gate == null || gate.test(response));
+            } finally {
+                headers.countDown();
+            }
+        }
+
+        void finish() {
+            headers.countDown();
+        }
+
+        static IOException cancelled() {
+            return new InterruptedIOException("请求已取消");
+        }
+    }
+
+    /**
+     * 读取非流式响应：成功时流式提取所需字段，失败时读出错误内容
+     */
+    private static void readBody(HttpURLConnection connection, Response response) throws IOException {
+        if (response.code == 200) {
+            response.body = "";
+            response.extracted = ResponseExtractor.extract(connection.getInputStream());
+        } else {
+            InputStream stream = response.code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            response.body = readFully(stream);
+        }
+    }
+
+    /**
+     * 逐行解析SSE，直到[DONE]或流结束
+     */
+    private static void readEvents(InputStream stream, StreamHandler handler, Response response, long start)
+            throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if ("[DONE]".equals(data)) {
+                    // 继续读到流末尾，保证连接可以回到keep-alive池
+                    continue;
+                }
+                if (response.firstEventMillis == 0) {
+                    response.firstEventMillis = (System.nanoTime() - start) / 1_000_000L;
+                }
+                // 处理失败时让整个请求失败，由路由重试或换平台，不能丢掉这个数据块继续拼接
+                try {
+                    handler.onData(data);
+                } catch (IOException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IOException("处理流式数据失败: " + e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 预热连接：在初始化阶段提前完成握手，让第一条解说不再承担建连开销
+     * @param apiUrl 请求地址
+     */
+    public static void warmUp(String apiUrl) {
+        AIExecutor.submitCommentary(RequestPriority.CARD_COMMENTARY, () -> {
+            try {
+                long start = System.nanoTime();
+                HttpURLConnection connection = (HttpURLConnection) new URL(apiUrl).openConnection();
+                connection.setRequestMethod("GET");
+                connection.setRequestProperty("Connection", "keep-alive");
+                connection.setConnectTimeout(5000);
+                connection.setReadTimeout(5000);
+                int code = connection.getResponseCode();
+                readFully(code >= 400 ? connection.getErrorStream() : connection.getInputStream());
+                logger.info("LLM连接预热完成，响应码: {}，耗时: {}ms", code, (System.nanoTime() - start) / 1_000_000L);
+            } catch (Exception e) {
+                logger.warn("LLM连接预热失败: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 创建并配置连接（尚未建立）
+     */
+    static HttpURLConnection openConnection(String apiUrl, String apiKey, int connectTimeoutMs, int readTimeoutMs)
+            throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(apiUrl).openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/json");
+        connection.setRequestProperty("Authorization", "Bearer " + apiKey);
+        connection.setRequestProperty("Connection", "keep-alive");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(connectTimeoutMs);
+        connection.setReadTimeout(readTimeoutMs);
+        return connection;
+    }
+
+    /**
+     * 建立连接并估算是否复用了连接池中的socket
+     * @return 估计是否复用（按耗时判断，低延迟网络上会把新连接误判为复用）
+     */
+    static boolean connect(HttpURLConnection connection) throws IOException {
+        long start = System.nanoTime();
+        connection.connect();
+        return System.nanoTime() - start < REUSE_THRESHOLD_NANOS;
+    }
+
+    /**
+     * 解析 Retry-After 响应头（秒数或HTTP日期）
+     * @return 毫秒，无法解析时返回-1
+     */
+    static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000L);
+        } catch (NumberFormatException e) {
+            // 不是秒数，按HTTP日期解析
+        }
+        try {
+            long at = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return Math.max(0, at - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 读完并关闭响应流，读完是连接能回到keep-alive池的前提
+     */
+    static String readFully(InputStream stream) throws IOException {
+        if (stream == null) {
+            return "";
+        }
+        try (InputStream in = stream) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    static void record(Response response) {
+        requestCount.incrementAndGet();
+        if (response.reused) {
+            reusedCount.incrementAndGet();
+        }
+        totalTtfbMillis.addAndGet(response.ttfbMillis);
+        lastTtfbMillis = response.ttfbMillis;
+        if (response.streamed) {
+            logger.info("LLM流式请求完成，响应码: {}，首字节: {}ms，首个数据块: {}ms，总耗时: {}ms，估计连接复用: {}",
+                    response.code, response.ttfbMillis, response.firstEventMillis, response.totalMillis, response.reused);
+        } else {
+            logger.info("LLM请求完成，响应码: {}，首字节: {}ms，总耗时: {}ms，估计连接复用: {}",
+                    response.code, response.ttfbMillis, response.totalMillis, response.reused);
+        }
+    }
+
+    /**
+     * 获取估计的连接复用率，按建立连接耗时判断，低延迟网络上偏高
+     * @return 0.0 - 1.0
+     */
+    public static double getReuseRate() {
+        long requests = requestCount.get();
+        return requests == 0 ? 0.0 : (double) reusedCount.get() / requests;
+    }
+
+    /**
+     * 获取平均首字节时间
+     * @return 毫秒
+     */
+    public static long getAverageTtfbMillis() {
+        long requests = requestCount.get();
+        return requests == 0 ? 0 : totalTtfbMillis.get() / requests;
+    }
+
+    /**
+     * 获取客户端统计信息
+     * @return 统计信息
+     */
+    public static String getStats() {
+        return String.format("LLM请求: %d, 连接复用率(估计): %.1f%%, 平均首字节: %dms, 最近首字节: %dms",
+                requestCount.get(), getReuseRate() * 100, getAverageTtfbMillis(), lastTtfbMillis);
+    }
+}
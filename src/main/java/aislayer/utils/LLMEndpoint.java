@@ -0,0 +1,49 @@
+package aislayer.utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 一个LLM平台的请求配置（地址、密钥、模型）
+ * 同一个平台、同一个地址的实例会被复用，这样延迟样本可以跨请求累计
+ */
+public class LLMEndpoint {
+
+    private static final Map<String, LLMEndpoint> endpoints = new ConcurrentHashMap<>();
+
+    public final String name;
+    public final String apiUrl;
+    public volatile String apiKey;
+    public volatile String model;
+
+    // 最近的首字节时间
+    public final LatencyTracker ttfb = new LatencyTracker(64);
+
+    // 路由用的健康状态
+    public final EndpointHealth health = new EndpointHealth();
+
+    private LLMEndpoint(String name, String apiUrl) {
+        this.name = name;
+        this.apiUrl = apiUrl;
+    }
+
+    /**
+     * 获取平台配置，密钥和模型以最新的配置为准
+     * @param name 平台名称
+     * @param apiUrl 请求地址
+     * @param apiKey API密钥
+     * @param model 模型名称
+     * @return 平台配置
+     */
+    public static LLMEndpoint of(String name, String apiUrl, String apiKey, String model) {
+        LLMEndpoint endpoint = endpoints.computeIfAbsent(name + "|" + apiUrl, key -> new LLMEndpoint(name, apiUrl));
+        endpoint.apiKey = apiKey;
+        endpoint.model = model;
+        return endpoint;
+    }
+
+    @Override
+    public String toString() {
+        return name + "(" + model + ")";
+    }
+}
@@ -0,0 +1,249 @@
+package aislayer.utils;
+
+import aislayer.panels.ConfigPanel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LLM平台路由
+ * 配置面板中的两个平台和 performance.properties 中的额外平台组成一个平台池，
+ * 每次请求按请求类型挑选最健康的平台（首字节时间EWMA按错误率加权，跳过熔断中的平台），
+ * 失败时自动换下一个平台；开启对冲请求时，排在后面的平台同时作为对冲的备用平台
+ */
+public class LLMRouter {
+
+    public static final Logger logger = LogManager.getLogger(LLMRouter.class.getName());
+
+    /**
+     * 请求类型，两类请求的耗时差别很大，分别统计
+     */
+    public enum Kind {
+        DECISION("决策"),
+        COMMENTARY("解说");
+
+        private final String description;
+
+        Kind(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    // 没有样本的平台假定的首字节时间，比它慢的平台会让位给新平台试一试
+    private static final double UNKNOWN_LATENCY_MS = PerformanceConfig.getLong("router.unknown_latency_ms", 2000);
+
+    // 一轮平台都失败后的重试
+    private static final int RETRY_COUNT = Math.max(0, PerformanceConfig.getInt("network.retry_count", 2));
+    private static final long RETRY_INTERVAL_MS = Math.max(1, PerformanceConfig.getLong("network.retry_interval", 1000));
+    private static final long RETRY_MAX_INTERVAL_MS = PerformanceConfig.getLong("network.retry_max_interval", 10000);
+
+    // 连接超时
+    public static final int CONNECT_TIMEOUT_MS = PerformanceConfig.getInt("network.connect_timeout", 5000);
+
+    private static final AtomicLong retries = new AtomicLong();
+
+    // 按配置顺序排列，选中的平台在最前面，评分相同时优先
+    private static volatile List<LLMEndpoint> providers = Collections.emptyList();
+
+    /**
+     * 设置平台池
+     * @param endpoints 平台列表，按优先顺序
+     */
+    public static void setProviders(List<LLMEndpoint> endpoints) {
+        if (!endpoints.equals(providers)) {
+            providers = Collections.unmodifiableList(new ArrayList<>(endpoints));
+            logger.info("LLM平台池: {}", providers);
+        }
+    }
+
+    public static List<LLMEndpoint> getProviders() {
+        return providers;
+    }
+
+    /**
+     * 按健康程度排序可用的平台
+     * @param kind 请求类型
+     * @return 可用平台，最好的在前
+     */
+    public static List<LLMEndpoint> route(Kind kind) {
+        List<LLMEndpoint> candidates = new ArrayList<>();
+        for (LLMEndpoint endpoint : providers) {
+            if (endpoint.health.isAvailable()) {
+                candidates.add(endpoint);
+            }
+        }
+        // 稳定排序，评分相同时保持配置顺序
+        candidates.sort(Comparator.comparingDouble(endpoint -> endpoint.health.score(kind, UNKNOWN_LATENCY_MS)));
+        return candidates;
+    }
+
+    /**
+     * 是否有可以接收请求的平台（都熔断时调用方可以直接走本地兜底）
+     */
+    public static boolean isAvailable() {
+        for (LLMEndpoint endpoint : providers) {
+            if (endpoint.health.isAvailable()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 发送请求：依次尝试可用平台，直到拿到成功的响应
+     * @param kind 请求类型
+     * @param attempt 请求逻辑
+     * @return 成功的响应；都失败时返回最后一个错误响应
+     */
+    public static LLMClient.Response execute(Kind kind, HedgedRequest.Attempt attempt) throws IOException {
+        return execute(kind, 0, attempt);
+    }
+
+    /**
+     * 发送请求：依次尝试可用平台；一轮都失败且错误可重试时，按指数退避（优先遵守 Retry-After）重试整轮
+     * @param kind 请求类型
+     * @param deadline 截止时间（毫秒时间戳），退避后会超过截止时间时不再重试；0表示不限
+     * @param attempt 请求逻辑
+     * @return 成功的响应；都失败时返回最后一个错误响应
+     */
+    public static LLMClient.Response execute(Kind kind, long deadline, HedgedRequest.Attempt attempt) throws IOException {
+        HedgedRequest.Attempt tracked = track(kind, attempt);
+        LLMClient.Response lastResponse = null;
+        IOException lastError = null;
+        for (int round = 0; ; round++) {
+            List<LLMEndpoint> candidates = route(kind);
+            if (candidates.isEmpty()) {
+                lastError = new IOException("没有可用的LLM平台");
+            }
+            long retryAfter = -1;
+            int index = 0;
+            while (index < candidates.size()) {
+                LLMEndpoint primary = candidates.get(index++);
+                LLMEndpoint secondary = ConfigPanel.hedgeRequests && index < candidates.size()
+                        ? candidates.get(index++)
+                        : null;
+                try {
+                    LLMClient.Response response = HedgedRequest.execute(primary, secondary, tracked);
+                    if (response.isSuccess()) {
+                        return response;
+                    }
+                    lastResponse = response;
+                    retryAfter = Math.max(retryAfter, response.retryAfterMillis);
+                } catch (DispatchedStreamException e) {
+                    // 动作已经执行，不能换平台重发
+                    throw e;
+                } catch (IOException e) {
+                    // 读取超时等网络错误换下一个平台；线程被中断时直接放弃
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw e;
+                    }
+                    lastError = e;
+                }
+                if (index < candidates.size()) {
+                    logger.info("{}{}请求失败，切换到{}", primary, kind.getDescription(), candidates.get(index));
+                }
+            }
+
+            if (round >= RETRY_COUNT || (lastResponse != null && !isRetryable(lastResponse.code))) {
+                break;
+            }
+            long delay = backoff(round, retryAfter);
+            if (deadline > 0 && System.currentTimeMillis() + delay >= deadline) {
+                break;
+            }
+            logger.info("{}请求失败，{}ms后第{}次重试", kind.getDescription(), delay, round + 1);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("等待重试时被中断");
+            }
+            retries.incrementAndGet();
+            lastResponse = null;
+        }
+        if (lastResponse != null) {
+            return lastResponse;
+        }
+        throw lastError;
+    }
+
+    /**
+     * 限流和服务端错误可以重试，其他错误码（参数、鉴权等）重试也没用
+     */
+    static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    /**
+     * 计算退避时间：重试间隔按2的幂增长并加随机抖动，服务端给了 Retry-After 时至少等那么久，都不超过上限
+     * @param round 已失败的轮数（从0开始）
+     * @param retryAfter Retry-After（毫秒），没有时为-1
+     */
+    static long backoff(int round, long retryAfter) {
+        long base = Math.min(RETRY_MAX_INTERVAL_MS, RETRY_INTERVAL_MS << Math.min(round, 16));
+        long jittered = base / 2 + ThreadLocalRandom.current().nextLong(base / 2 + 1);
+        return Math.min(RETRY_MAX_INTERVAL_MS, Math.max(jittered, retryAfter));
+    }
+
+    /**
+     * 包装请求逻辑：发送前检查熔断，结束后记录健康状态
+     * 只有网络异常、超时、限流和5xx算平台失败；其他4xx（密钥、模型名、请求体过大等）是调用方的问题，
+     * 换平台也是同样的结果，照常返回给调用方但不触发熔断，被对冲取消的一方也不算失败
+     */
+    private static HedgedRequest.Attempt track(Kind kind, HedgedRequest.Attempt attempt) {
+        return (endpoint, call) -> {
+            if (!endpoint.health.allowRequest()) {
+                throw new IOException(endpoint + "熔断中");
+            }
+            LLMClient.Response response;
+            try {
+                response = attempt.execute(endpoint, call);
+            } catch (RuntimeException e) {
+                // 请求逻辑自身的错误，不是平台的问题
+                endpoint.health.releaseProbe();
+                throw e;
+            } catch (IOException e) {
+                if (call.isCancelled()) {
+                    // 被对冲取消不说明平台有问题，但探测名额要还回去，否则要再等一个熔断周期
+                    endpoint.health.releaseProbe();
+                } else {
+                    endpoint.health.recordFailure();
+                }
+                throw e;
+            }
+            if (response.isSuccess()) {
+                endpoint.health.recordSuccess(kind, response);
+            } else if (isRetryable(response.code)) {
+                endpoint.health.recordFailure();
+            } else {
+                logger.warn("{}返回{}，请检查平台配置，不计入熔断", endpoint, response.code);
+                endpoint.health.releaseProbe();
+            }
+            return response;
+        };
+    }
+
+    /**
+     * 获取路由统计信息
+     * @return 每个平台一行
+     */
+    public static String getStats() {
+        StringBuilder stats = new StringBuilder("LLM平台(重试" + retries.get() + "次):");
+        for (LLMEndpoint endpoint : providers) {
+            stats.append("\n  ").append(endpoint).append(": ").append(endpoint.health);
+        }
+        return stats.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package aislayer.utils;
+
+import java.util.Arrays;
+
+/**
+ * 最近请求延迟的滑动窗口
+ * 保存最近若干次的耗时样本，用来估算分位数（比如用p90决定多久没有首字节就发对冲请求）
+ */
+public class LatencyTracker {
+
+    private final long[] samples;
+    private int count = 0;
+    private int next = 0;
+
+    public LatencyTracker(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+    }
+
+    /**
+     * 记录一次耗时
+     * @param millis 毫秒
+     */
+    public synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+    }
+
+    /**
+     * 获取样本数
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * 计算分位数
+     * @param percentile 0~100
+     * @return 毫秒，没有样本时返回-1
+     */
+    public synchronized long percentile(double percentile) {
+        if (count == 0) {
+            return -1;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percentile / 100.0 * count) - 1;
+        return sorted[Math.max(0, Math.min(count - 1, index))];
+    }
+}
@@ -0,0 +1,386 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.map.MapEdge;
+import com.megacrit.cardcrawl.map.MapRoomNode;
+import com.megacrit.cardcrawl.rooms.MonsterRoomBoss;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 地图索引
+ * 每一层地图只构建一次：(x,y)到节点的网格，加上压缩成后继数组的路线DAG。
+ * 从Boss往下做动态规划，算出每个节点到Boss的路线数，以及沿途各类房间数量的最少/最多值，
+ * 不再逐条枚举路线（路线数随地图宽度指数增长，每一步还要复制整张地图）
+ */
+public class MapIndex {
+
+    public static final Logger logger = LogManager.getLogger(MapIndex.class.getName());
+
+    // 统计的房间类型（地图符号）及中文名
+    static final String[] SYMBOLS = {"M", "E", "R", "$", "?", "T"};
+    static final String[] SYMBOL_NAMES = {"怪物", "精英", "火堆", "商店", "事件", "宝箱"};
+
+    private static MapIndex cached;
+
+    // 构建时使用的地图，换层后地图对象会被替换
+    private final ArrayList<ArrayList<MapRoomNode>> map;
+    private final int width;
+    private final int height;
+
+    // 节点编号 = y * width + x，Boss 的编号为 bossId
+    private final MapRoomNode[] nodes;
+    private final int bossId;
+    private final MapRoomNode bossNode;
+    private final int[][] successors;
+    private final int[] categories;
+
+    // 动态规划结果：到Boss的路线数、沿途（含自身）各类房间数量的最少/最多值、能否经过绿宝石钥匙
+    private final long[] pathCounts;
+    private final int[][] minCounts;
+    private final int[][] maxCounts;
+    private final boolean[] emeraldReachable;
+
+    private MapIndex(ArrayList<ArrayList<MapRoomNode>> map) {
+        this.map = map;
+        int maxWidth = 0;
+        for (ArrayList<MapRoomNode> row : map) {
+            maxWidth = Math.max(maxWidth, row.size());
+        }
+        width = Math.max(1, maxWidth);
+        height = map.size();
+        bossId = width * height;
+
+        nodes = new MapRoomNode[bossId];
+        for (ArrayList<MapRoomNode> row : map) {
+            for (MapRoomNode node : row) {
+                if (contains(node.x, node.y)) {
+                    nodes[id(node.x, node.y)] = node;
+                }
+            }
+        }
+
+        bossNode = new MapRoomNode(-1, height);
+        bossNode.room = new MonsterRoomBoss();
+        bossNode.hb = AbstractDungeon.dungeonMapScreen.map.bossHb;
+
+        successors = new int[bossId + 1][];
+        categories = new int[bossId + 1];
+        for (int id = 0; id <= bossId; id++) {
+            successors[id] = new int[0];
+            categories[id] = -1;
+        }
+        for (int id = 0; id < bossId; id++) {
+            MapRoomNode node = nodes[id];
+            if (node == null) {
+                continue;
+            }
+            categories[id] = category(node);
+            successors[id] = successorsOf(node);
+        }
+
+        int categoryCount = SYMBOLS.length;
+        pathCounts = new long[bossId + 1];
+        minCounts = new int[categoryCount][bossId + 1];
+        maxCounts = new int[categoryCount][bossId + 1];
+        emeraldReachable = new boolean[bossId + 1];
+        pathCounts[bossId] = 1;
+
+        // 边只会从低层指向高层，从最高层往下算即可
+        for (int y = height - 1; y >= 0; y--) {
+            for (int x = 0; x < width; x++) {
+                int id = id(x, y);
+                if (nodes[id] != null) {
+                    solve(id);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取当前地图的索引（换层后自动重建）
+     */
+    public static synchronized MapIndex current() {
+        ArrayList<ArrayList<MapRoomNode>> map = AbstractDungeon.map;
+        if (cached == null || cached.map != map) {
+            cached = new MapIndex(map);
+            logger.info("已构建地图索引，第{}层，从起点出发共{}条路线", AbstractDungeon.actNum, cached.totalPaths(null));
+        }
+        return cached;
+    }
+
+    private void solve(int id) {
+        int[] next = successors[id];
+        int own = categories[id];
+        long count = 0;
+        boolean reachable = false;
+        for (int category = 0; category < SYMBOLS.length; category++) {
+            minCounts[category][id] = Integer.MAX_VALUE;
+            maxCounts[category][id] = Integer.MIN_VALUE;
+        }
+        for (int successor : next) {
+            if (pathCounts[successor] == 0) {
+                continue;
+            }
+            count += pathCounts[successor];
+            reachable |= emeraldReachable[successor];
+            for (int category = 0; category < SYMBOLS.length; category++) {
+                minCounts[category][id] = Math.min(minCounts[category][id], minCounts[category][successor]);
+                maxCounts[category][id] = Math.max(maxCounts[category][id], maxCounts[category][successor]);
+            }
+        }
+        pathCounts[id] = count;
+        if (count == 0) {
+            // 走不到Boss的孤立节点
+            for (int category = 0; category < SYMBOLS.length; category++) {
+                minCounts[category][id] = 0;
+                maxCounts[category][id] = 0;
+            }
+            return;
+        }
+        if (own >= 0) {
+            minCounts[own][id]++;
+            maxCounts[own][id]++;
+        }
+        emeraldReachable[id] = reachable || nodes[id].hasEmeraldKey;
+    }
+
+    private int[] successorsOf(MapRoomNode node) {
+        ArrayList<MapEdge> edges = node.getEdges();
+        if (edges == null || edges.isEmpty()) {
+            return new int[0];
+        }
+        int[] next = new int[edges.size()];
+        int size = 0;
+        for (MapEdge edge : edges) {
+            // 指向地图之外的边就是通往Boss
+            int target = contains(edge.dstX, edge.dstY) && nodes[id(edge.dstX, edge.dstY)] != null
+                    ? id(edge.dstX, edge.dstY)
+                    : bossId;
+            boolean duplicate = false;
+            for (int i = 0; i < size; i++) {
+                duplicate |= next[i] == target;
+            }
+            if (!duplicate) {
+                next[size++] = target;
+            }
+        }
+        return Arrays.copyOf(next, size);
+    }
+
+    private boolean contains(int x, int y) {
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    private int id(int x, int y) {
+        return y * width + x;
+    }
+
+    /**
+     * 节点编号，起点（尚未进入地图）返回-1，不在地图中返回-2
+     */
+    int idOf(MapRoomNode node) {
+        if (node == bossNode) {
+            return bossId;
+        }
+        if (node == null || node.x < 0 || node.y < 0) {
+            return -1;
+        }
+        return contains(node.x, node.y) && nodes[id(node.x, node.y)] != null ? id(node.x, node.y) : -2;
+    }
+
+    private static int category(MapRoomNode node) {
+        if (node.room == null) {
+            return -1;
+        }
+        String symbol = node.room.getMapSymbol();
+        for (int i = 0; i < SYMBOLS.length; i++) {
+            if (SYMBOLS[i].equals(symbol)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * 按坐标取节点
+     * @return 节点，不存在时返回null
+     */
+    public MapRoomNode getNode(int x, int y) {
+        return contains(x, y) ? nodes[id(x, y)] : null;
+    }
+
+    /**
+     * 下一步可以走的节点（只包含能走到Boss的节点），顶层之后是Boss
+     * @param current 当前节点，起点时为坐标为-1的节点或null
+     * @return 可选节点
+     */
+    public List<MapRoomNode> nextNodes(MapRoomNode current) {
+        int[] next = nextIds(current);
+        List<MapRoomNode> result = new ArrayList<>(next.length);
+        for (int id : next) {
+            result.add(id == bossId ? bossNode : nodes[id]);
+        }
+        return result;
+    }
+
+    int[] nextIds(MapRoomNode current) {
+        int currentId = idOf(current);
+        if (currentId == -2 || currentId == bossId) {
+            return new int[0];
+        }
+        if (currentId == -1) {
+            // 起点：第一行所有能走到Boss的节点
+            int[] next = new int[width];
+            int size = 0;
+            for (int x = 0; x < width && height > 0; x++) {
+                if (nodes[id(x, 0)] != null && pathCounts[id(x, 0)] > 0) {
+                    next[size++] = id(x, 0);
+                }
+            }
+            return Arrays.copyOf(next, size);
+        }
+        return successorIds(currentId);
+    }
+
+    /**
+     * 从当前位置出发到Boss的路线总数
+     */
+    public long totalPaths(MapRoomNode current) {
+        long total = 0;
+        for (int id : nextIds(current)) {
+            total += pathCounts[id];
+        }
+        return total;
+    }
+
+    /**
+     * 按下一步的选择汇总路线（与 nextNodes 的顺序一致），大小只与节点数有关
+     * @param current 当前节点
+     * @return {"路线总数", "选项0": {...}, ...}
+     */
+    public JSONObject summarize(MapRoomNode current) {
+        JSONObject summary = new JSONObject();
+        summary.put("路线总数", totalPaths(current));
+        int[] next = nextIds(current);
+        for (int i = 0; i < next.length; i++) {
+            summary.put("选项" + i, describe(next[i]));
+        }
+        return summary;
+    }
+
+    /**
+     * 所有下一步选项合起来的路线统计
+     * @param current 当前节点
+     * @return {"路线总数", 各类房间数量的最少~最多, "绿宝石钥匙"}
+     */
+    public JSONObject aggregate(MapRoomNode current) {
+        JSONObject stats = new JSONObject();
+        int[] next = nextIds(current);
+        stats.put("路线总数", totalPaths(current));
+        boolean emerald = false;
+        for (int category = 0; category < SYMBOLS.length; category++) {
+            int min = Integer.MAX_VALUE;
+            int max = Integer.MIN_VALUE;
+            for (int id : next) {
+                min = Math.min(min, id == bossId ? 0 : minCounts[category][id]);
+                max = Math.max(max, id == bossId ? 0 : maxCounts[category][id]);
+            }
+            if (next.length > 0) {
+                stats.put(SYMBOL_NAMES[category], min == max ? String.valueOf(min) : min + "~" + max);
+            }
+        }
+        for (int id : next) {
+            emerald |= emeraldReachable[id];
+        }
+        if (emerald) {
+            stats.put("绿宝石钥匙", "可经过");
+        }
+        return stats;
+    }
+
+    int bossId() {
+        return bossId;
+    }
+
+    MapRoomNode nodeOf(int id) {
+        return id == bossId ? bossNode : nodes[id];
+    }
+
+    /**
+     * 节点的房间类型（SYMBOLS 的下标），未知类型和Boss返回-1
+     */
+    int categoryOf(int id) {
+        return categories[id];
+    }
+
+    /**
+     * 能走到Boss的后继节点
+     */
+    int[] successorIds(int id) {
+        int[] next = successors[id];
+        int size = 0;
+        int[] result = new int[next.length];
+        for (int successor : next) {
+            if (pathCounts[successor] > 0) {
+                result[size++] = successor;
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    /**
+     * 描述从某个节点出发到Boss的所有路线
+     */
+    JSONObject describe(int id) {
+        JSONObject description = new JSONObject();
+        if (id == bossId) {
+            description.put("房间", "Boss");
+            return description;
+        }
+        description.put("房间", roomName(nodes[id]));
+        description.put("路线数", pathCounts[id]);
+        for (int category = 0; category < SYMBOLS.length; category++) {
+            int min = minCounts[category][id];
+            int max = maxCounts[category][id];
+            description.put(SYMBOL_NAMES[category], min == max ? String.valueOf(min) : min + "~" + max);
+        }
+        if (emeraldReachable[id]) {
+            description.put("绿宝石钥匙", "可经过");
+        }
+        return description;
+    }
+
+    /**
+     * 房间的中文名
+     */
+    public static String roomName(MapRoomNode node) {
+        if (node.room == null) {
+            return "未知";
+        }
+        String nodeSymbol = node.room.getMapSymbol();
+        switch (nodeSymbol) {
+            case "M":
+                return node.hasEmeraldKey ? "怪物(绿宝石钥匙)" : "怪物";
+            case "B":
+                return "Boss";
+            case "E":
+                return node.hasEmeraldKey ? "精英(绿宝石钥匙)" : "精英";
+            case "T":
+                return "宝箱";
+            case "$":
+                return "商店";
+            case "?":
+                return "事件";
+            case "R":
+                return "火堆";
+            default:
+                return nodeSymbol;
+        }
+    }
+}
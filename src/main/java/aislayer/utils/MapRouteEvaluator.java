@@ -0,0 +1,310 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.core.Settings;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.map.MapRoomNode;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 本地路线评估
+ * 在地图索引的DAG上按层做束搜索，每个节点只保留评分最高的若干条部分路线，
+ * 沿途模拟血量、金币和距上次火堆的层数来给路线打分（精英看血量、火堆看间隔、商店看金币、绿宝石钥匙加分），
+ * 最后只把评分最高的K条路线和汇总统计交给AI，不管地图多宽，发送的内容大小都是固定的
+ */
+public class MapRouteEvaluator {
+
+    public static final Logger logger = LogManager.getLogger(MapRouteEvaluator.class.getName());
+
+    private static final int TOP_K = Math.max(1, PerformanceConfig.getInt("map.top_k", 3));
+    private static final int BEAM_WIDTH = Math.max(TOP_K, PerformanceConfig.getInt("map.beam_width", 16));
+
+    // 估算用的血量变化（占最大生命值的比例）和金币变化，取前几层的大致水平
+    private static final double MONSTER_DAMAGE = 0.08;
+    private static final double ELITE_DAMAGE = 0.25;
+    private static final double EVENT_DAMAGE = 0.03;
+    private static final double REST_HEAL = 0.3;
+    private static final int MONSTER_GOLD = 15;
+    private static final int ELITE_GOLD = 30;
+    private static final int SHOP_GOLD = 150;
+
+    // 血量低于这个比例时火堆优先回血，打精英开始有风险
+    private static final double LOW_HP = 0.5;
+    private static final double DANGER_HP = 0.35;
+    // 两个火堆至少隔这么多层才不算浪费，超过这么多层没火堆再打精英要扣分
+    private static final int REST_MIN_GAP = 3;
+    private static final int REST_MAX_GAP = 6;
+
+    private static final Comparator<Partial> BY_SCORE = (a, b) -> Double.compare(b.score, a.score);
+
+    private static Plan lastPlan;
+
+    /**
+     * 部分路线，通过 parent 共享前缀
+     */
+    private static class Partial {
+        final Partial parent;
+        final int id;
+        final int length;
+        final double score;
+        final double hp;
+        final int gold;
+        final int sinceRest;
+        final boolean emerald;
+
+        Partial(Partial parent, int id, int length, double score, double hp, int gold, int sinceRest, boolean emerald) {
+            this.parent = parent;
+            this.id = id;
+            this.length = length;
+            this.score = score;
+            this.hp = hp;
+            this.gold = gold;
+            this.sinceRest = sinceRest;
+            this.emerald = emerald;
+        }
+    }
+
+    /**
+     * 一条推荐路线
+     */
+    public static class Route {
+        public final List<MapRoomNode> nodes;
+        public final double score;
+        public final double hp;
+
+        Route(List<MapRoomNode> nodes, double score, double hp) {
+            this.nodes = nodes;
+            this.score = score;
+            this.hp = hp;
+        }
+
+        public MapRoomNode firstNode() {
+            return nodes.get(0);
+        }
+    }
+
+    /**
+     * 一次评估的结果
+     */
+    public static class Plan {
+        private final MapIndex index;
+        private final MapRoomNode current;
+        private final int currentHealth;
+        private final int gold;
+        private final List<Route> routes;
+        private final JSONObject stats;
+
+        Plan(MapIndex index, MapRoomNode current, List<Route> routes, JSONObject stats) {
+            this.index = index;
+            this.current = current;
+            this.currentHealth = AbstractDungeon.player.currentHealth;
+            this.gold = AbstractDungeon.player.gold;
+            this.routes = routes;
+            this.stats = stats;
+        }
+
+        public List<Route> getRoutes() {
+            return routes;
+        }
+
+        /**
+         * 转换成发给AI的内容：汇总统计加上推荐路线，路线的序号就是选择的序号
+         */
+        public JSONObject toJson() {
+            JSONObject json = new JSONObject();
+            json.put("统计", stats);
+            for (int i = 0; i < routes.size(); i++) {
+                Route route = routes.get(i);
+                StringBuilder path = new StringBuilder();
+                for (MapRoomNode node : route.nodes) {
+                    if (path.length() > 0) {
+                        path.append(" → ");
+                    }
+                    path.append(MapIndex.roomName(node));
+                }
+                JSONObject routeJson = new JSONObject();
+                routeJson.put("路线", path.toString());
+                routeJson.put("评分", Math.round(route.score * 10) / 10.0);
+                routeJson.put("预计到Boss时血量", Math.round(route.hp * 100) + "%");
+                json.put("路线" + i, routeJson);
+            }
+            return json;
+        }
+    }
+
+    /**
+     * 评估从当前位置出发的路线，地图、位置、血量和金币都没变时复用上一次的结果
+     * @param current 当前节点
+     * @return 评估结果
+     */
+    public static synchronized Plan evaluate(MapRoomNode current) {
+        MapIndex index = MapIndex.current();
+        if (lastPlan != null && lastPlan.index == index && lastPlan.current == current
+                && lastPlan.currentHealth == AbstractDungeon.player.currentHealth
+                && lastPlan.gold == AbstractDungeon.player.gold) {
+            return lastPlan;
+        }
+        long startTime = System.currentTimeMillis();
+        lastPlan = new Plan(index, current, search(index, current), index.aggregate(current));
+        logger.info("路线评估完成，共{}条推荐路线，耗时{}ms", lastPlan.routes.size(), System.currentTimeMillis() - startTime);
+        return lastPlan;
+    }
+
+    private static List<Route> search(MapIndex index, MapRoomNode current) {
+        int bossId = index.bossId();
+        List<List<Partial>> beams = new ArrayList<>(bossId + 1);
+        for (int id = 0; id <= bossId; id++) {
+            beams.add(null);
+        }
+
+        double hp = AbstractDungeon.player.maxHealth > 0
+                ? (double) AbstractDungeon.player.currentHealth / AbstractDungeon.player.maxHealth
+                : 1.0;
+        Partial start = new Partial(null, -1, 0, 0, hp, AbstractDungeon.player.gold, 0, Settings.hasEmeraldKey);
+        for (int next : index.nextIds(current)) {
+            offer(beams, enter(index, start, next));
+        }
+
+        // 节点编号按层递增，边只从低层指向高层，按编号顺序处理即是拓扑序
+        for (int id = 0; id < bossId; id++) {
+            List<Partial> beam = beams.get(id);
+            if (beam == null) {
+                continue;
+            }
+            for (int next : index.successorIds(id)) {
+                for (Partial partial : beam) {
+                    offer(beams, enter(index, partial, next));
+                }
+            }
+            beams.set(id, null);
+        }
+
+        List<Route> routes = new ArrayList<>();
+        List<Partial> finished = beams.get(bossId);
+        if (finished == null) {
+            return routes;
+        }
+        for (int i = 0; i < finished.size() && i < TOP_K; i++) {
+            routes.add(toRoute(index, finished.get(i)));
+        }
+        return routes;
+    }
+
+    /**
+     * 加入目标节点的束，只保留评分最高的 BEAM_WIDTH 条
+     */
+    private static void offer(List<List<Partial>> beams, Partial partial) {
+        List<Partial> beam = beams.get(partial.id);
+        if (beam == null) {
+            beam = new ArrayList<>(BEAM_WIDTH + 1);
+            beams.set(partial.id, beam);
+        }
+        int position = Collections.binarySearch(beam, partial, BY_SCORE);
+        position = position < 0 ? -position - 1 : position;
+        if (position >= BEAM_WIDTH) {
+            return;
+        }
+        beam.add(position, partial);
+        if (beam.size() > BEAM_WIDTH) {
+            beam.remove(beam.size() - 1);
+        }
+    }
+
+    /**
+     * 走进一个房间，更新模拟状态和评分
+     */
+    private static Partial enter(MapIndex index, Partial from, int id) {
+        double score = from.score;
+        double hp = from.hp;
+        int gold = from.gold;
+        int sinceRest = from.sinceRest + 1;
+        boolean emerald = from.emerald;
+
+        if (id == index.bossId()) {
+            // 带着越多的血进Boss越好
+            score += hp * 5;
+            return new Partial(from, id, from.length + 1, score, hp, gold, sinceRest, emerald);
+        }
+
+        int category = index.categoryOf(id);
+        String symbol = category < 0 ? "" : MapIndex.SYMBOLS[category];
+        switch (symbol) {
+            case "M":
+                score += 1.0;
+                hp -= MONSTER_DAMAGE;
+                gold += MONSTER_GOLD;
+                break;
+            case "E":
+                if (hp >= LOW_HP) {
+                    score += 3.0;
+                } else if (hp >= DANGER_HP) {
+                    score += 1.0;
+                } else {
+                    score -= 2.0;
+                }
+                if (sinceRest > REST_MAX_GAP) {
+                    score -= 0.5;
+                }
+                hp -= ELITE_DAMAGE;
+                gold += ELITE_GOLD;
+                if (index.nodeOf(id).hasEmeraldKey && !emerald && Settings.isFinalActAvailable) {
+                    score += 4.0;
+                    emerald = true;
+                }
+                break;
+            case "R":
+                if (hp < LOW_HP) {
+                    double heal = Math.min(REST_HEAL, 1 - hp);
+                    hp += heal;
+                    score += heal * 10;
+                } else {
+                    // 血量健康时用来升级卡牌
+                    score += 1.5;
+                }
+                if (sinceRest < REST_MIN_GAP) {
+                    score -= 1.0;
+                }
+                sinceRest = 0;
+                break;
+            case "$":
+                if (gold >= SHOP_GOLD) {
+                    score += 2.0 + Math.min(2.0, (gold - SHOP_GOLD) / 100.0);
+                    gold -= SHOP_GOLD;
+                } else {
+                    score -= 0.5;
+                }
+                break;
+            case "?":
+                score += 1.0;
+                hp -= EVENT_DAMAGE;
+                break;
+            case "T":
+                score += 2.0;
+                break;
+            default:
+                break;
+        }
+        if (hp <= 0 && from.hp > 0) {
+            // 模拟中死掉的路线基本不可取
+            score -= 20;
+        }
+        hp = Math.max(0, hp);
+        return new Partial(from, id, from.length + 1, score, hp, gold, sinceRest, emerald);
+    }
+
+    private static Route toRoute(MapIndex index, Partial last) {
+        MapRoomNode[] nodes = new MapRoomNode[last.length];
+        for (Partial partial = last; partial != null && partial.id >= 0; partial = partial.parent) {
+            nodes[partial.length - 1] = index.nodeOf(partial.id);
+        }
+        List<MapRoomNode> path = new ArrayList<>(nodes.length);
+        Collections.addAll(path, nodes);
+        return new Route(path, last.score, last.hp);
+    }
+}
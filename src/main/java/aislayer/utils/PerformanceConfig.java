@@ -0,0 +1,109 @@
+package aislayer.utils;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Properties;
+
+/**
+ * 性能配置读取工具
+ * 优先读取游戏目录（游戏进程的工作目录）下的 performance.properties，用于覆盖默认配置；
+ * 没有时读取jar内的同名文件（src/main/resources/performance.properties），都没有时使用代码中的默认值
+ */
+public class PerformanceConfig {
+
+    private static final Logger logger = LogManager.getLogger(PerformanceConfig.class.getName());
+
+    private static final String FILE_NAME = "performance.properties";
+
+    private static Properties properties;
+
+    /**
+     * 加载配置文件（只加载一次）
+     */
+    private static synchronized Properties load() {
+        if (properties != null) {
+            return properties;
+        }
+        properties = new Properties();
+        try {
+            File file = new File(FILE_NAME);
+            if (file.isFile()) {
+                try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+                    properties.load(reader);
+                }
+                logger.info("已加载性能配置: " + file.getAbsolutePath());
+            } else {
+                InputStream stream = PerformanceConfig.class.getClassLoader().getResourceAsStream(FILE_NAME);
+                if (stream != null) {
+                    try (Reader reader = new InputStreamReader(stream, StandardCharsets.UTF_8)) {
+                        properties.load(reader);
+                    }
+                    logger.info("已加载内置性能配置");
+                } else {
+                    logger.info("未找到性能配置文件，使用默认值");
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("读取性能配置失败，使用默认值: " + e.getMessage());
+        }
+        return properties;
+    }
+
+    /**
+     * 读取整数配置
+     * @param key 配置键
+     * @param defaultValue 默认值
+     * @return 配置值
+     */
+    public static int getInt(String key, int defaultValue) {
+        return (int) getLong(key, defaultValue);
+    }
+
+    /**
+     * 读取长整数配置
+     * @param key 配置键
+     * @param defaultValue 默认值
+     * @return 配置值
+     */
+    public static long getLong(String key, long defaultValue) {
+        String value = load().getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            logger.warn("性能配置 " + key + " 不是有效的数字: " + value);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 读取字符串配置
+     * @param key 配置键
+     * @param defaultValue 默认值
+     * @return 配置值（去掉首尾空白）
+     */
+    public static String getString(String key, String defaultValue) {
+        String value = load().getProperty(key);
+        return value == null ? defaultValue : value.trim();
+    }
+
+    /**
+     * 读取布尔配置
+     * @param key 配置键
+     * @param defaultValue 默认值
+     * @return 配置值
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        String value = load().getProperty(key);
+        return value == null ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+}
@@ -0,0 +1,76 @@
+package aislayer.utils;
+
+/**
+ * LLM请求优先级
+ * 数值越小越优先；解说类请求带有截止时间，过期后直接丢弃
+ */
+public enum RequestPriority {
+    /**
+     * AI决策，驱动出牌和结束回合，永不过期
+     */
+    DECISION(0, "AI决策", 0),
+
+    /**
+     * 战斗开始时的怪物介绍
+     */
+    MONSTER_INTRO(1, "怪物介绍", 8000),
+
+    /**
+     * 打牌、用药水等行动解说
+     */
+    CARD_COMMENTARY(2, "行动解说", 5000),
+
+    /**
+     * 回合结束总结
+     */
+    TURN_SUMMARY(3, "回合总结", 6000);
+
+    private final int value;
+    private final String description;
+    private final long deadlineMillis;
+
+    RequestPriority(int value, String description, long deadlineMillis) {
+        this.value = value;
+        this.description = description;
+        this.deadlineMillis = deadlineMillis;
+    }
+
+    /**
+     * 获取优先级数值
+     * @return 数值，越小越优先
+     */
+    public int getValue() {
+        return value;
+    }
+
+    /**
+     * 获取优先级描述
+     * @return 描述
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 获取从提交开始计算的有效期
+     * @return 毫秒，0表示永不过期
+     */
+    public long getDeadlineMillis() {
+        return deadlineMillis;
+    }
+
+    /**
+     * 根据解说的行动类型获取优先级
+     * @param actionType 行动类型
+     * @return 对应的优先级
+     */
+    public static RequestPriority forAction(String actionType) {
+        if ("怪物介绍".equals(actionType)) {
+            return MONSTER_INTRO;
+        }
+        if ("结束回合".equals(actionType)) {
+            return TURN_SUMMARY;
+        }
+        return CARD_COMMENTARY;
+    }
+}
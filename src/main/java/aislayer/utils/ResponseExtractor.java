@@ -0,0 +1,425 @@
+package aislayer.utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 聊天响应流式提取器
+ * 直接从输入流逐字符解析JSON，只构建需要的部分：choices[0].message.content、
+ * choices[0].message.tool_calls[0] 和 usage，其余内容边读边跳过，不会先把整个响应读成字符串再解析。
+ * 直接在一个小字节缓冲区上解码UTF-8，不再套 InputStreamReader 和 BufferedReader 两层各8K的缓冲
+ */
+public class ResponseExtractor {
+
+    /**
+     * 提取结果
+     */
+    public static class Result {
+        public String content;
+        public JSONObject toolCall;
+        public JSONObject usage;
+    }
+
+    private static final int BUFFER_SIZE = 2048;
+
+    private final InputStream in;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int position = 0;
+    private int limit = 0;
+    // 四字节UTF-8字符解码出的低位代理，下一次读取时返回
+    private int pendingLowSurrogate = -1;
+    private int peeked = -2;
+
+    private ResponseExtractor(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * 从响应流提取内容，读完后关闭流
+     * @param stream 响应流
+     * @return 提取结果
+     */
+    public static Result extract(InputStream stream) throws IOException {
+        Result result = new Result();
+        try (InputStream in = stream) {
+            ResponseExtractor extractor = new ResponseExtractor(in);
+            extractor.readRoot(result);
+            // 读到流末尾，保证连接可以回到keep-alive池
+            while (in.read(extractor.buffer) != -1) {
+                // 丢弃
+            }
+        }
+        return result;
+    }
+
+    private void readRoot(Result result) throws IOException {
+        expect('{');
+        if (skipWhitespaceAndCheck('}')) {
+            return;
+        }
+        do {
+            String key = readKey();
+            if ("choices".equals(key)) {
+                readChoices(result);
+            } else if ("usage".equals(key)) {
+                Object usage = readValue();
+                if (usage instanceof JSONObject) {
+                    result.usage = (JSONObject) usage;
+                }
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readChoices(Result result) throws IOException {
+        if (peekNonWhitespace() != '[') {
+            skipValue();
+            return;
+        }
+        expect('[');
+        if (skipWhitespaceAndCheck(']')) {
+            return;
+        }
+        int index = 0;
+        do {
+            if (index == 0 && peekNonWhitespace() == '{') {
+                readChoice(result);
+            } else {
+                skipValue();
+            }
+            index++;
+        } while (nextMember(']'));
+    }
+
+    private void readChoice(Result result) throws IOException {
+        expect('{');
+        if (skipWhitespaceAndCheck('}')) {
+            return;
+        }
+        do {
+            String key = readKey();
+            if ("message".equals(key) && peekNonWhitespace() == '{') {
+                readMessage(result);
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    private void readMessage(Result result) throws IOException {
+        expect('{');
+        if (skipWhitespaceAndCheck('}')) {
+            return;
+        }
+        do {
+            String key = readKey();
+            if ("content".equals(key)) {
+                Object content = readValue();
+                if (content instanceof String) {
+                    result.content = (String) content;
+                }
+            } else if ("tool_calls".equals(key) && peekNonWhitespace() == '[') {
+                expect('[');
+                if (skipWhitespaceAndCheck(']')) {
+                    continue;
+                }
+                int index = 0;
+                do {
+                    if (index == 0) {
+                        Object toolCall = readValue();
+                        if (toolCall instanceof JSONObject) {
+                            result.toolCall = (JSONObject) toolCall;
+                        }
+                    } else {
+                        skipValue();
+                    }
+                    index++;
+                } while (nextMember(']'));
+            } else {
+                skipValue();
+            }
+        } while (nextMember('}'));
+    }
+
+    // ---------- 通用解析 ----------
+
+    private String readKey() throws IOException {
+        skipWhitespace();
+        String key = readString();
+        expect(':');
+        return key;
+    }
+
+    /**
+     * 读取成员分隔符
+     * @return 还有下一个成员返回true，遇到结束符返回false
+     */
+    private boolean nextMember(char close) throws IOException {
+        int c = nextNonWhitespace();
+        if (c == ',') {
+            return true;
+        }
+        if (c == close) {
+            return false;
+        }
+        throw error("应为 ',' 或 '" + close + "'");
+    }
+
+    private boolean skipWhitespaceAndCheck(char close) throws IOException {
+        if (peekNonWhitespace() == close) {
+            next();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 读取并构建一个完整的值
+     */
+    private Object readValue() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '{') {
+            next();
+            JSONObject object = new JSONObject();
+            if (skipWhitespaceAndCheck('}')) {
+                return object;
+            }
+            do {
+                String key = readKey();
+                object.put(key, readValue());
+            } while (nextMember('}'));
+            return object;
+        }
+        if (c == '[') {
+            next();
+            JSONArray array = new JSONArray();
+            if (skipWhitespaceAndCheck(']')) {
+                return array;
+            }
+            do {
+                array.put(readValue());
+            } while (nextMember(']'));
+            return array;
+        }
+        if (c == '"') {
+            return readString();
+        }
+        return JSONObject.stringToValue(readLiteral());
+    }
+
+    /**
+     * 跳过一个值，不构建任何对象
+     */
+    private void skipValue() throws IOException {
+        int c = peekNonWhitespace();
+        if (c == '"') {
+            next();
+            while (true) {
+                int d = next();
+                if (d == '\\') {
+                    next();
+                } else if (d == '"') {
+                    return;
+                }
+            }
+        }
+        if (c == '{' || c == '[') {
+            int depth = 0;
+            boolean inString = false;
+            while (true) {
+                int d = next();
+                if (inString) {
+                    if (d == '\\') {
+                        next();
+                    } else if (d == '"') {
+                        inString = false;
+                    }
+                } else if (d == '"') {
+                    inString = true;
+                } else if (d == '{' || d == '[') {
+                    depth++;
+                } else if (d == '}' || d == ']') {
+                    if (--depth == 0) {
+                        return;
+                    }
+                }
+            }
+        }
+        readLiteral();
+    }
+
+    private String readString() throws IOException {
+        expect('"');
+        StringBuilder text = new StringBuilder();
+        while (true) {
+            int c = next();
+            if (c == '"') {
+                return text.toString();
+            }
+            if (c != '\\') {
+                text.append((char) c);
+                continue;
+            }
+            int escaped = next();
+            switch (escaped) {
+                case 'b':
+                    text.append('\b');
+                    break;
+                case 't':
+                    text.append('\t');
+                    break;
+                case 'n':
+                    text.append('\n');
+                    break;
+                case 'f':
+                    text.append('\f');
+                    break;
+                case 'r':
+                    text.append('\r');
+                    break;
+                case 'u':
+                    char[] hex = new char[4];
+                    for (int i = 0; i < 4; i++) {
+                        hex[i] = (char) next();
+                    }
+                    try {
+                        text.append((char) Integer.parseInt(new String(hex), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("无效的\\u转义");
+                    }
+                    break;
+                default:
+                    text.append((char) escaped);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 读取数字、true、false、null
+     */
+    private String readLiteral() throws IOException {
+        skipWhitespace();
+        StringBuilder literal = new StringBuilder();
+        while (true) {
+            int c = peek();
+            if (c == -1 || c == ',' || c == '}' || c == ']' || Character.isWhitespace(c)) {
+                break;
+            }
+            literal.append((char) next());
+        }
+        if (literal.length() == 0) {
+            throw error("缺少值");
+        }
+        return literal.toString();
+    }
+
+    private void expect(char expected) throws IOException {
+        int c = nextNonWhitespace();
+        if (c != expected) {
+            throw error("应为 '" + expected + "'");
+        }
+    }
+
+    private int nextNonWhitespace() throws IOException {
+        skipWhitespace();
+        return next();
+    }
+
+    private int peekNonWhitespace() throws IOException {
+        skipWhitespace();
+        return peek();
+    }
+
+    private void skipWhitespace() throws IOException {
+        while (true) {
+            int c = peek();
+            if (c == -1 || !Character.isWhitespace(c)) {
+                return;
+            }
+            next();
+        }
+    }
+
+    private int peek() throws IOException {
+        if (peeked == -2) {
+            peeked = decode();
+        }
+        return peeked;
+    }
+
+    /**
+     * 从字节缓冲区解码下一个UTF-8字符，四字节字符拆成代理对分两次返回，无效的字节序列返回U+FFFD
+     * @return 字符，流结束时返回-1
+     */
+    private int decode() throws IOException {
+        if (pendingLowSurrogate >= 0) {
+            int low = pendingLowSurrogate;
+            pendingLowSurrogate = -1;
+            return low;
+        }
+        int first = readByte();
+        if (first < 0x80) {
+            return first;
+        }
+        int extra;
+        int codePoint;
+        if (first >= 0xF0 && first <= 0xF4) {
+            extra = 3;
+            codePoint = first & 0x07;
+        } else if (first >= 0xE0) {
+            extra = first <= 0xEF ? 2 : -1;
+            codePoint = first & 0x0F;
+        } else if (first >= 0xC2) {
+            extra = 1;
+            codePoint = first & 0x1F;
+        } else {
+            extra = -1;
+            codePoint = 0;
+        }
+        if (extra < 0) {
+            return 0xFFFD;
+        }
+        for (int i = 0; i < extra; i++) {
+            int b = readByte();
+            if (b < 0 || (b & 0xC0) != 0x80) {
+                return 0xFFFD;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3F);
+        }
+        if (codePoint >= 0x10000) {
+            pendingLowSurrogate = Character.lowSurrogate(codePoint);
+            return Character.highSurrogate(codePoint);
+        }
+        return codePoint;
+    }
+
+    private int readByte() throws IOException {
+        if (position >= limit) {
+            limit = in.read(buffer, 0, BUFFER_SIZE);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++] & 0xFF;
+    }
+
+    private int next() throws IOException {
+        int c = peek();
+        if (c == -1) {
+            throw error("响应提前结束");
+        }
+        peeked = -2;
+        return c;
+    }
+
+    private IOException error(String message) {
+        return new IOException("解析响应失败: " + message);
+    }
+}
@@ -0,0 +1,44 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.core.Settings;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * 整局有效的知识记忆
+ * 已经告诉AI的卡牌、遗物、药水、关键词在换房间时保留（作为对话开头稳定不变的知识提示），
+ * 只有开始新的一局时才清空；换房间只清空对话本身和状态差量
+ */
+public class RunKnowledge {
+
+    public static final Logger logger = LogManager.getLogger(RunKnowledge.class.getName());
+
+    private static String currentRun = null;
+    private static int lastFloor = -1;
+
+    /**
+     * 进入新房间前调用
+     */
+    public static synchronized void onEnterRoom() {
+        String run = getRunId();
+        int floor = AbstractDungeon.floorNum;
+        // 种子或角色变了，或者楼层倒退（同种子重开），都视为新的一局
+        if (!run.equals(currentRun) || floor < lastFloor) {
+            currentRun = run;
+            KnowledgeRegistry.reset();
+            KeywordIndex.reset();
+            AIUtils.conversation.clear();
+            logger.info("开始新的一局({})，清空已知知识", run);
+        } else {
+            AIUtils.conversation.clearTurns();
+        }
+        lastFloor = floor;
+        AIUtils.stateEncoder.reset();
+    }
+
+    private static String getRunId() {
+        String character = AbstractDungeon.player == null ? "" : AbstractDungeon.player.getClass().getName();
+        return Settings.seed + ":" + character;
+    }
+}
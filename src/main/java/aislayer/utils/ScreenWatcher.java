@@ -0,0 +1,101 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 界面切换通知
+ * 游戏线程每帧调用 onFrame 检查当前界面，AI逻辑登记想等的界面后拿到一个 Future，
+ * 界面到达并稳定若干帧（且锁定的点击已经被游戏处理）时由游戏线程完成 Future，超时则以 TimeoutException 结束，
+ * 不再轮询 AbstractDungeon.screen，也不占用AI决策线程
+ */
+public class ScreenWatcher {
+
+    public static final Logger logger = LogManager.getLogger(ScreenWatcher.class.getName());
+
+    // 界面需要连续保持多少帧才算稳定（点击奖励后可能先切到别的界面再切回来）
+    private static final int SETTLE_FRAMES = Math.max(1, PerformanceConfig.getInt("game.screen_settle_frames", 5));
+    // 等待界面的默认超时，选卡牌奖励时中间还要等一次AI决策
+    public static final long WAIT_TIMEOUT_MS = PerformanceConfig.getLong("game.screen_wait_timeout_ms", 120000);
+
+    private static final Queue<Waiter> waiters = new ConcurrentLinkedQueue<>();
+
+    private static AbstractDungeon.CurrentScreen lastScreen = null;
+
+    private static class Waiter {
+        final AbstractDungeon.CurrentScreen target;
+        final long deadline;
+        final CompletableFuture<AbstractDungeon.CurrentScreen> future = new CompletableFuture<>();
+        // 只由游戏线程读写
+        int stableFrames = 0;
+
+        Waiter(AbstractDungeon.CurrentScreen target, long deadline) {
+            this.target = target;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * 每帧由游戏线程调用
+     */
+    public static void onFrame() {
+        AbstractDungeon.CurrentScreen screen = AbstractDungeon.screen;
+        if (screen != lastScreen) {
+            logger.info("界面切换: {} -> {}", lastScreen, screen);
+            lastScreen = screen;
+        }
+        if (waiters.isEmpty()) {
+            return;
+        }
+        boolean settled = AIUtils.lockedHoveredHitbox == null;
+        long now = System.currentTimeMillis();
+        List<Waiter> reached = new ArrayList<>();
+        List<Waiter> expired = new ArrayList<>();
+        Iterator<Waiter> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+            Waiter waiter = iterator.next();
+            if (waiter.future.isDone()) {
+                iterator.remove();
+                continue;
+            }
+            waiter.stableFrames = screen == waiter.target && settled ? waiter.stableFrames + 1 : 0;
+            if (waiter.stableFrames >= SETTLE_FRAMES) {
+                iterator.remove();
+                reached.add(waiter);
+            } else if (now >= waiter.deadline) {
+                iterator.remove();
+                expired.add(waiter);
+            }
+        }
+        // 遍历结束后再完成，回调里登记的新等待从下一帧开始计算
+        for (Waiter waiter : reached) {
+            waiter.future.complete(screen);
+        }
+        for (Waiter waiter : expired) {
+            logger.info("等待界面{}超时，当前界面{}", waiter.target, screen);
+            waiter.future.completeExceptionally(new TimeoutException("等待界面" + waiter.target + "超时"));
+        }
+    }
+
+    /**
+     * 登记等待：从下一帧开始计算，界面为 target 且稳定后完成
+     * 回调在游戏线程执行，不要在回调里阻塞
+     * @param target 目标界面
+     * @param timeoutMs 超时（毫秒）
+     * @return 完成时的界面，超时则异常结束
+     */
+    public static CompletableFuture<AbstractDungeon.CurrentScreen> whenSettled(AbstractDungeon.CurrentScreen target, long timeoutMs) {
+        Waiter waiter = new Waiter(target, System.currentTimeMillis() + timeoutMs);
+        waiters.add(waiter);
+        return waiter.future;
+    }
+}
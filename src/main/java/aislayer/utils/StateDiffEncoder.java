@@ -0,0 +1,139 @@
+package aislayer.utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * 游戏状态差量编码器
+ * 记住上一次发给AI的完整状态，之后只发送变化的字段；每隔若干次（或差量不比完整状态小多少时）
+ * 重新发送一次完整状态作为关键帧，避免差量链过长
+ */
+public class StateDiffEncoder {
+
+    private static final int KEYFRAME_INTERVAL = Math.max(1, PerformanceConfig.getInt("state.keyframe_interval", 8));
+
+    // 差量超过完整状态的这个比例时直接发完整状态
+    private static final double MAX_DELTA_RATIO = 0.7;
+
+    public static final String REMOVED = "已移除";
+
+    /**
+     * 编码结果
+     */
+    public static class Encoded {
+        public final boolean keyframe;
+        public final JSONObject content;
+
+        Encoded(boolean keyframe, JSONObject content) {
+            this.keyframe = keyframe;
+            this.content = content;
+        }
+    }
+
+    // 即使没有变化也总是发送的顶层字段
+    private final Set<String> alwaysSent;
+    private JSONObject lastSent;
+    private int deltasSinceKeyframe = 0;
+
+    public StateDiffEncoder(String... alwaysSent) {
+        this.alwaysSent = new HashSet<>(Arrays.asList(alwaysSent));
+    }
+
+    /**
+     * 编码当前状态
+     * @param state 完整状态
+     * @param forceKeyframe 是否强制发送完整状态
+     * @return 关键帧时为完整状态，否则为相对上一次的差量
+     */
+    public synchronized Encoded encode(JSONObject state, boolean forceKeyframe) {
+        JSONObject snapshot = new JSONObject(state.toString());
+        JSONObject previous = lastSent;
+        lastSent = snapshot;
+
+        if (previous == null || forceKeyframe || deltasSinceKeyframe >= KEYFRAME_INTERVAL) {
+            deltasSinceKeyframe = 0;
+            return new Encoded(true, state);
+        }
+
+        Object diff = diff(previous, snapshot);
+        JSONObject delta = diff instanceof JSONObject ? (JSONObject) diff : new JSONObject();
+        for (String key : alwaysSent) {
+            if (snapshot.has(key)) {
+                delta.put(key, snapshot.get(key));
+            }
+        }
+        if (delta.toString().length() > snapshot.toString().length() * MAX_DELTA_RATIO) {
+            deltasSinceKeyframe = 0;
+            return new Encoded(true, state);
+        }
+        deltasSinceKeyframe++;
+        return new Encoded(false, delta);
+    }
+
+    /**
+     * 重置，下一次编码发送完整状态
+     */
+    public synchronized void reset() {
+        lastSent = null;
+        deltasSinceKeyframe = 0;
+    }
+
+    /**
+     * 计算两个值的差量
+     * 对象逐字段比较；等长的对象数组（如生物列表）按下标比较，键为"[下标]"；
+     * 其他数组（手牌、牌堆等）有变化时整体替换
+     * @return 没有变化返回null
+     */
+    static Object diff(Object previous, Object current) {
+        if (previous instanceof JSONObject && current instanceof JSONObject) {
+            JSONObject before = (JSONObject) previous;
+            JSONObject after = (JSONObject) current;
+            JSONObject result = new JSONObject();
+            for (String key : after.keySet()) {
+                if (!before.has(key)) {
+                    result.put(key, after.get(key));
+                    continue;
+                }
+                Object changed = diff(before.get(key), after.get(key));
+                if (changed != null) {
+                    result.put(key, changed);
+                }
+            }
+            for (String key : before.keySet()) {
+                if (!after.has(key)) {
+                    result.put(key, REMOVED);
+                }
+            }
+            return result.isEmpty() ? null : result;
+        }
+        if (previous instanceof JSONArray && current instanceof JSONArray
+                && isObjectArray((JSONArray) previous) && isObjectArray((JSONArray) current)
+                && ((JSONArray) previous).length() == ((JSONArray) current).length()) {
+            JSONArray before = (JSONArray) previous;
+            JSONArray after = (JSONArray) current;
+            JSONObject result = new JSONObject();
+            for (int i = 0; i < after.length(); i++) {
+                Object changed = diff(before.get(i), after.get(i));
+                if (changed != null) {
+                    result.put("[" + i + "]", changed);
+                }
+            }
+            return result.isEmpty() ? null : result;
+        }
+        return Objects.equals(String.valueOf(previous), String.valueOf(current)) ? null : current;
+    }
+
+    private static boolean isObjectArray(JSONArray array) {
+        for (int i = 0; i < array.length(); i++) {
+            if (!(array.get(i) instanceof JSONObject)) {
+                return false;
+            }
+        }
+        return array.length() > 0;
+    }
+}
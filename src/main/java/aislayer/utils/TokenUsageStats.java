@@ -0,0 +1,67 @@
+package aislayer.utils;
+
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Token用量统计
+ * 记录API返回的 usage，包括服务端提示词缓存命中的token数
+ * （DeepSeek 为 prompt_cache_hit_tokens，OpenAI 为 prompt_tokens_details.cached_tokens）
+ */
+public class TokenUsageStats {
+
+    private static final AtomicLong requests = new AtomicLong();
+    private static final AtomicLong promptTokens = new AtomicLong();
+    private static final AtomicLong cachedTokens = new AtomicLong();
+    private static final AtomicLong completionTokens = new AtomicLong();
+
+    /**
+     * 记录一次响应的用量
+     * @param usage 响应中的 usage 对象，可以为null
+     */
+    public static void record(JSONObject usage) {
+        if (usage == null) {
+            return;
+        }
+        requests.incrementAndGet();
+        promptTokens.addAndGet(usage.optLong("prompt_tokens", 0));
+        completionTokens.addAndGet(usage.optLong("completion_tokens", 0));
+        if (usage.has("prompt_cache_hit_tokens")) {
+            cachedTokens.addAndGet(usage.optLong("prompt_cache_hit_tokens", 0));
+        } else {
+            JSONObject details = usage.optJSONObject("prompt_tokens_details");
+            if (details != null) {
+                cachedTokens.addAndGet(details.optLong("cached_tokens", 0));
+            }
+        }
+    }
+
+    /**
+     * 从一段响应JSON（完整响应或流式数据块）中记录用量
+     * @param response 响应JSON
+     */
+    public static void recordFrom(JSONObject response) {
+        if (response.has("usage") && !response.isNull("usage")) {
+            record(response.optJSONObject("usage"));
+        }
+    }
+
+    /**
+     * 获取提示词缓存命中率
+     * @return 0~1
+     */
+    public static double getCacheHitRate() {
+        long prompt = promptTokens.get();
+        return prompt == 0 ? 0 : (double) cachedTokens.get() / prompt;
+    }
+
+    /**
+     * 获取用量统计信息
+     * @return 统计信息
+     */
+    public static String getStats() {
+        return String.format("Token用量: %d次请求, 输入%d(缓存命中%d, %.0f%%), 输出%d",
+                requests.get(), promptTokens.get(), cachedTokens.get(), getCacheHitRate() * 100, completionTokens.get());
+    }
+}
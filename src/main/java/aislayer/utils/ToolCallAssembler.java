@@ -0,0 +1,250 @@
+package aislayer.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 流式工具调用拼装器
+ * 逐块累积 tool_calls 的 function.arguments，当动作需要的参数（序号、目标等）已经完整时
+ * 就可以提前执行动作，不必等 reason 文本全部生成完
+ */
+public class ToolCallAssembler {
+
+    /**
+     * 参数就绪回调
+     */
+    public interface Listener {
+        void onActionReady(String id, String functionName, JSONObject arguments);
+    }
+
+    // 各工具执行动作所需的参数（reason只用于展示，不需要等待）
+    private static final Map<String, List<String>> ACTION_FIELDS = new HashMap<>();
+
+    static {
+        ACTION_FIELDS.put("playCard", Arrays.asList("index", "target"));
+        ACTION_FIELDS.put("usePotion", Arrays.asList("index", "target"));
+        ACTION_FIELDS.put("planTurn", Collections.singletonList("steps"));
+        ACTION_FIELDS.put("endTurn", Collections.singletonList("suicide"));
+        ACTION_FIELDS.put("select", Collections.singletonList("Indexes"));
+        ACTION_FIELDS.put("boolean", Collections.singletonList("boolean"));
+    }
+
+    private final Listener listener;
+    private String id = "";
+    private String name = "";
+    private final StringBuilder arguments = new StringBuilder();
+    private boolean dispatched = false;
+
+    public ToolCallAssembler(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * 处理一个流式数据块中的 delta
+     * @param delta choices[0].delta
+     */
+    public void accept(JSONObject delta) {
+        JSONArray toolCalls = delta.optJSONArray("tool_calls");
+        if (toolCalls == null) {
+            return;
+        }
+        for (int i = 0; i < toolCalls.length(); i++) {
+            JSONObject toolCall = toolCalls.getJSONObject(i);
+            // 只执行第一个工具调用，与非流式逻辑一致
+            if (toolCall.optInt("index", 0) != 0) {
+                continue;
+            }
+            if (toolCall.has("id") && !toolCall.isNull("id")) {
+                id = toolCall.getString("id");
+            }
+            JSONObject function = toolCall.optJSONObject("function");
+            if (function != null) {
+                if (function.has("name") && !function.isNull("name")) {
+                    name += function.getString("name");
+                }
+                if (function.has("arguments") && !function.isNull("arguments")) {
+                    arguments.append(function.getString("arguments"));
+                }
+            }
+        }
+        checkReady();
+    }
+
+    /**
+     * 检查动作参数是否已经完整，完整则提前回调一次
+     */
+    private void checkReady() {
+        if (dispatched || listener == null) {
+            return;
+        }
+        List<String> fields = ACTION_FIELDS.get(name);
+        if (fields == null) {
+            return;
+        }
+        JSONObject completed = parseCompletedFields(arguments.toString());
+        for (String field : fields) {
+            if (!completed.has(field)) {
+                return;
+            }
+        }
+        dispatched = true;
+        listener.onActionReady(id, name, completed);
+    }
+
+    /**
+     * 是否已经提前执行过动作
+     */
+    public boolean isDispatched() {
+        return dispatched;
+    }
+
+    /**
+     * 是否收到了工具调用
+     */
+    public boolean hasToolCall() {
+        return !name.isEmpty();
+    }
+
+    /**
+     * 拼装成与非流式响应相同结构的 tool_call
+     * 流在中途断开时 arguments 可能不完整，此时只保留已经完整的字段
+     * @return {"id", "type", "function": {"name", "arguments"}}
+     */
+    public JSONObject toToolCall() {
+        String text = arguments.toString();
+        try {
+            new JSONObject(text);
+        } catch (JSONException e) {
+            text = parseCompletedFields(text).toString();
+        }
+        JSONObject function = new JSONObject();
+        function.put("name", name);
+        function.put("arguments", text);
+        JSONObject toolCall = new JSONObject();
+        toolCall.put("id", id);
+        toolCall.put("type", "function");
+        toolCall.put("function", function);
+        return toolCall;
+    }
+
+    /**
+     * 从不完整的JSON对象文本中取出已经完整的顶层字段
+     * 例如 {"index": 2, "target": 1, "reason": "这波 只会得到 index 和 target
+     * @param partial 不完整的JSON文本
+     * @return 已完整的字段
+     */
+    static JSONObject parseCompletedFields(String partial) {
+        JSONObject completed = new JSONObject();
+        int length = partial.length();
+        int i = skipWhitespace(partial, 0);
+        if (i >= length || partial.charAt(i) != '{') {
+            return completed;
+        }
+        i++;
+        while (true) {
+            i = skipWhitespace(partial, i);
+            if (i >= length || partial.charAt(i) == '}') {
+                return completed;
+            }
+            if (partial.charAt(i) == ',') {
+                i++;
+                continue;
+            }
+            // 字段名
+            int keyEnd = findValueEnd(partial, i);
+            if (keyEnd < 0) {
+                return completed;
+            }
+            String keyText = partial.substring(i, keyEnd);
+            i = skipWhitespace(partial, keyEnd);
+            if (i >= length || partial.charAt(i) != ':') {
+                return completed;
+            }
+            i = skipWhitespace(partial, i + 1);
+            // 字段值
+            int valueEnd = findValueEnd(partial, i);
+            if (valueEnd < 0) {
+                return completed;
+            }
+            try {
+                JSONObject field = new JSONObject("{" + keyText + ":" + partial.substring(i, valueEnd) + "}");
+                for (String key : field.keySet()) {
+                    completed.put(key, field.get(key));
+                }
+            } catch (Exception e) {
+                return completed;
+            }
+            i = valueEnd;
+        }
+    }
+
+    /**
+     * 找到从start开始的JSON值的结束位置（不含）
+     * @return 结束位置，值还不完整时返回-1
+     */
+    private static int findValueEnd(String text, int start) {
+        int length = text.length();
+        if (start >= length) {
+            return -1;
+        }
+        char first = text.charAt(start);
+        if (first == '"') {
+            for (int i = start + 1; i < length; i++) {
+                char c = text.charAt(i);
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+        if (first == '[' || first == '{') {
+            int depth = 0;
+            boolean inString = false;
+            for (int i = start; i < length; i++) {
+                char c = text.charAt(i);
+                if (inString) {
+                    if (c == '\\') {
+                        i++;
+                    } else if (c == '"') {
+                        inString = false;
+                    }
+                } else if (c == '"') {
+                    inString = true;
+                } else if (c == '[' || c == '{') {
+                    depth++;
+                } else if (c == ']' || c == '}') {
+                    depth--;
+                    if (depth == 0) {
+                        return i + 1;
+                    }
+                }
+            }
+            return -1;
+        }
+        // 数字、布尔值、null：遇到分隔符才算完整，避免把 "1" 当成还在生成的 "12"
+        for (int i = start; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == ',' || c == '}' || Character.isWhitespace(c)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int skipWhitespace(String text, int start) {
+        int i = start;
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+}
@@ -0,0 +1,104 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 工具定义注册表
+ * 每个工具定义只构建、序列化一次，保存UTF-8字节，拼请求体时直接拷贝。
+ * 工具数组在请求的固定前缀里，所以每次都发送全部工具，逐字节不变，提示词缓存才能命中；
+ * 只能使用部分工具的界面（比如选牌界面只能用 select）通过当轮消息里的说明限制，而不是换一份工具数组
+ */
+public class ToolRegistry {
+
+    // 按注册顺序保存，保证工具数组的字节始终相同
+    private static final Map<String, byte[]> tools = new LinkedHashMap<>();
+
+    // 全部工具的数组（已序列化）
+    private static byte[] allTools;
+
+    // 只需要选择物品的界面
+    private static final List<String> SELECT_ONLY = Collections.singletonList("select");
+
+    /**
+     * 注册工具
+     * @param function 工具的 function 定义（含 name）
+     */
+    public static synchronized void register(JSONObject function) {
+        JSONObject tool = new JSONObject();
+        tool.put("type", "function");
+        tool.put("function", function);
+        tools.put(function.getString("name"), tool.toString().getBytes(StandardCharsets.UTF_8));
+        allTools = null;
+    }
+
+    /**
+     * 获取全部工具的数组，不随界面变化
+     * @return 序列化后的JSON数组字节
+     */
+    public static synchronized byte[] allTools() {
+        if (allTools == null) {
+            allTools = serialize(tools.keySet());
+        }
+        return allTools;
+    }
+
+    /**
+     * 当前界面的工具限制说明，写进当轮消息
+     * @param screen 当前界面，null视为普通界面
+     * @return 说明文字，没有限制时返回null
+     */
+    public static String instructionFor(AbstractDungeon.CurrentScreen screen) {
+        List<String> names = namesFor(screen);
+        if (names == null) {
+            return null;
+        }
+        return "当前界面只能调用 " + String.join("、", names) + " 工具";
+    }
+
+    /**
+     * 各界面可用的工具名，null表示全部工具
+     */
+    static List<String> namesFor(AbstractDungeon.CurrentScreen screen) {
+        if (screen == null) {
+            return null;
+        }
+        switch (screen) {
+            case GRID:
+            case HAND_SELECT:
+            case CARD_REWARD:
+            case BOSS_REWARD:
+            case COMBAT_REWARD:
+            case MAP:
+                return SELECT_ONLY;
+            default:
+                return null;
+        }
+    }
+
+    private static byte[] serialize(Iterable<String> names) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write('[');
+        boolean first = true;
+        for (String name : names) {
+            byte[] tool = tools.get(name);
+            if (tool == null) {
+                continue;
+            }
+            if (!first) {
+                out.write(',');
+            }
+            out.write(tool, 0, tool.length);
+            first = false;
+        }
+        out.write(']');
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,265 @@
+package aislayer.utils;
+
+import com.megacrit.cardcrawl.actions.GameActionManager;
+import com.megacrit.cardcrawl.cards.AbstractCard;
+import com.megacrit.cardcrawl.core.AbstractCreature;
+import com.megacrit.cardcrawl.dungeons.AbstractDungeon;
+import com.megacrit.cardcrawl.potions.AbstractPotion;
+import com.megacrit.cardcrawl.ui.panels.EnergyPanel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * 回合计划执行器
+ * AI通过 planTurn 一次给出本回合要打的牌、要用的药水和是否结束回合，
+ * 计划开始时把序号解析成具体的卡牌、药水和目标对象，之后每当动作队列空闲就执行下一步；
+ * 执行前检查计划的前提是否还成立（抽到了新牌、牌不在手里、目标已死亡、能量不够、换了回合），
+ * 不成立时放弃剩下的步骤，由调用方重新询问AI。只在游戏线程调用
+ */
+public class TurnPlanExecutor {
+
+    public static final Logger logger = LogManager.getLogger(TurnPlanExecutor.class.getName());
+
+    private static class Step {
+        final String action;
+        final AbstractCard card;
+        final AbstractPotion potion;
+        final AbstractCreature target;
+        final int targetIndex;
+
+        Step(String action, AbstractCard card, AbstractPotion potion, AbstractCreature target, int targetIndex) {
+            this.action = action;
+            this.card = card;
+            this.potion = potion;
+            this.target = target;
+            this.targetIndex = targetIndex;
+        }
+
+        @Override
+        public String toString() {
+            switch (action) {
+                case "playCard":
+                    return "打出" + card.name;
+                case "usePotion":
+                    return "使用" + potion.name;
+                default:
+                    return "结束回合";
+            }
+        }
+    }
+
+    private static final List<Step> steps = new ArrayList<>();
+    // 计划开始时手里的牌，出现不在其中的牌说明抽到或生成了新牌
+    private static final Set<UUID> plannedHand = new HashSet<>();
+    private static int plannedTurn = -1;
+    private static int next = 0;
+
+    /**
+     * 开始执行新的回合计划，并立即执行第一步
+     * @param planSteps planTurn 的 steps 参数，AI给出的格式不对时为null
+     */
+    public static void start(JSONArray planSteps) {
+        clear(null);
+        if (planSteps == null) {
+            clear("回合计划缺少steps参数");
+            return;
+        }
+        try {
+            parse(planSteps);
+        } catch (Exception e) {
+            clear("回合计划解析失败: " + e.getMessage());
+            return;
+        }
+        if (steps.isEmpty()) {
+            clear("回合计划没有有效的步骤");
+            return;
+        }
+        ArrayList<AbstractCard> hand = AbstractDungeon.player.hand.group;
+        for (AbstractCard card : hand) {
+            plannedHand.add(card.uuid);
+        }
+        plannedTurn = GameActionManager.turn;
+        logger.info("回合计划: {}", steps);
+        step();
+    }
+
+    /**
+     * 把计划的序号解析成具体的卡牌、药水和目标对象，遇到无效的步骤时只保留之前的步骤
+     */
+    private static void parse(JSONArray planSteps) {
+        List<AbstractCreature> creatures = creatures();
+        ArrayList<AbstractCard> hand = AbstractDungeon.player.hand.group;
+        parse:
+        for (int i = 0; i < planSteps.length(); i++) {
+            JSONObject planStep = planSteps.optJSONObject(i);
+            if (planStep == null) {
+                logger.info("回合计划第{}步不是对象，只执行之前的步骤", i);
+                break;
+            }
+            String action = planStep.optString("action", "");
+            int index = planStep.optInt("index", -1);
+            int targetIndex = planStep.optInt("target", -1);
+            AbstractCreature target = targetIndex >= 0 && targetIndex < creatures.size() ? creatures.get(targetIndex) : null;
+            Step step;
+            switch (action) {
+                case "playCard":
+                    if (index < 0 || index >= hand.size()) {
+                        logger.info("回合计划第{}步的手牌序号{}无效，只执行之前的步骤", i, index);
+                        break parse;
+                    }
+                    step = new Step(action, hand.get(index), null, target, targetIndex);
+                    break;
+                case "usePotion":
+                    if (index < 0 || index >= AbstractDungeon.player.potions.size()) {
+                        logger.info("回合计划第{}步的药水序号{}无效，只执行之前的步骤", i, index);
+                        break parse;
+                    }
+                    step = new Step(action, null, AbstractDungeon.player.potions.get(index), target, targetIndex);
+                    break;
+                case "endTurn":
+                    step = new Step(action, null, null, null, -1);
+                    break;
+                default:
+                    logger.info("回合计划第{}步的动作{}无效，只执行之前的步骤", i, action);
+                    break parse;
+            }
+            steps.add(step);
+            if ("endTurn".equals(action)) {
+                break;
+            }
+        }
+    }
+
+    public static boolean hasPlan() {
+        return next < steps.size();
+    }
+
+    /**
+     * 执行计划的下一步
+     * @return 执行了一步返回true；计划已结束或与当前局面不符时返回false，需要重新询问AI
+     */
+    public static boolean step() {
+        if (!hasPlan()) {
+            return false;
+        }
+        String divergence = checkDivergence(steps.get(next));
+        if (divergence != null) {
+            clear(divergence);
+            return false;
+        }
+        Step step = steps.get(next++);
+        JSONObject arguments = new JSONObject();
+        switch (step.action) {
+            case "playCard":
+                arguments.put("index", AbstractDungeon.player.hand.group.indexOf(step.card));
+                arguments.put("target", currentTargetIndex(step));
+                break;
+            case "usePotion":
+                arguments.put("index", AbstractDungeon.player.potions.indexOf(step.potion));
+                arguments.put("target", currentTargetIndex(step));
+                break;
+            default:
+                arguments.put("suicide", false);
+                break;
+        }
+        logger.info("按回合计划执行第{}步: {}", next, step);
+        AIUtils.executeAction(step.action, arguments);
+        if (!hasPlan()) {
+            clear(null);
+        }
+        return true;
+    }
+
+    /**
+     * 检查计划的前提是否还成立
+     * @return 不成立的原因，成立时返回null
+     */
+    private static String checkDivergence(Step step) {
+        if (GameActionManager.turn != plannedTurn) {
+            return "已经不是计划时的回合";
+        }
+        if (AbstractDungeon.getMonsters().areMonstersBasicallyDead()) {
+            return "敌人已全部死亡";
+        }
+        for (AbstractCard card : AbstractDungeon.player.hand.group) {
+            if (!plannedHand.contains(card.uuid)) {
+                return "手牌中出现了新牌" + card.name;
+            }
+        }
+        switch (step.action) {
+            case "playCard":
+                if (!AbstractDungeon.player.hand.group.contains(step.card)) {
+                    return step.card.name + "已经不在手牌中";
+                }
+                if (!step.card.freeToPlayOnce && step.card.costForTurn > EnergyPanel.getCurrentEnergy()) {
+                    return "能量不足以打出" + step.card.name;
+                }
+                if (step.card.target == AbstractCard.CardTarget.ENEMY || step.card.target == AbstractCard.CardTarget.SELF_AND_ENEMY) {
+                    if (step.target == null || step.target == AbstractDungeon.player || isGone(step.target)) {
+                        return step.card.name + "的目标已经不在了";
+                    }
+                }
+                return null;
+            case "usePotion":
+                if (!AbstractDungeon.player.potions.contains(step.potion)) {
+                    return step.potion.name + "已经不在了";
+                }
+                if (step.target != null && step.target != AbstractDungeon.player && isGone(step.target)) {
+                    return step.potion.name + "的目标已经不在了";
+                }
+                return null;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * 目标在当前生物列表中的序号；不需要指定目标时挑第一个还活着的敌人
+     */
+    private static int currentTargetIndex(Step step) {
+        List<AbstractCreature> creatures = creatures();
+        int index = step.target == null ? -1 : creatures.indexOf(step.target);
+        if (index >= 0 && (step.target == AbstractDungeon.player || !isGone(step.target))) {
+            return index;
+        }
+        for (int i = 1; i < creatures.size(); i++) {
+            if (!isGone(creatures.get(i))) {
+                return i;
+            }
+        }
+        return Math.max(0, step.targetIndex);
+    }
+
+    private static boolean isGone(AbstractCreature creature) {
+        return creature.isDead || creature.isDying || creature.isEscaping || creature.halfDead;
+    }
+
+    private static List<AbstractCreature> creatures() {
+        List<AbstractCreature> creatures = new ArrayList<>();
+        creatures.add(AbstractDungeon.player);
+        creatures.addAll(AbstractDungeon.getMonsters().monsters);
+        return creatures;
+    }
+
+    /**
+     * 放弃剩下的步骤
+     * @param reason 原因，计划正常结束时为null
+     */
+    public static void clear(String reason) {
+        if (reason != null) {
+            logger.info("回合计划中断（{}），放弃剩余{}步", reason, steps.size() - next);
+        }
+        steps.clear();
+        plannedHand.clear();
+        plannedTurn = -1;
+        next = 0;
+    }
+}
@@ -0,0 +1,71 @@
+package aislayer.utils;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 手动运行的基准测试的公共部分
+ * pom.xml 没有JMH依赖，这里不引入；用 HotSpot 的线程分配计数统计每次操作分配的字节数，
+ * 预热后多轮测量取最小值，结果只用于新旧实现对比，不是精确的绝对值
+ */
+class BenchmarkSupport {
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    static final int WARMUP_ROUNDS = 5;
+    static final int MEASURE_ROUNDS = 5;
+
+    // 防止JIT把结果没被使用的调用整个消除
+    static volatile Object sink;
+
+    /**
+     * 一次测量的结果
+     */
+    static class Measurement {
+        final double bytesPerOp;
+        final double nanosPerOp;
+
+        Measurement(double bytesPerOp, double nanosPerOp) {
+            this.bytesPerOp = bytesPerOp;
+            this.nanosPerOp = nanosPerOp;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%10.1f B/op %10.1f ns/op", bytesPerOp, nanosPerOp);
+        }
+    }
+
+    /**
+     * 预热后测量
+     * @param operation 被测操作
+     * @param iterations 每轮执行次数
+     * @return 各轮中分配最少、耗时最短的结果
+     */
+    static Measurement measure(Runnable operation, int iterations) {
+        for (int round = 0; round < WARMUP_ROUNDS; round++) {
+            for (int i = 0; i < iterations; i++) {
+                operation.run();
+            }
+        }
+        long threadId = Thread.currentThread().getId();
+        double bestBytes = Double.MAX_VALUE;
+        double bestNanos = Double.MAX_VALUE;
+        for (int round = 0; round < MEASURE_ROUNDS; round++) {
+            long bytesBefore = THREADS.getThreadAllocatedBytes(threadId);
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                operation.run();
+            }
+            long nanos = System.nanoTime() - start;
+            long bytes = THREADS.getThreadAllocatedBytes(threadId) - bytesBefore;
+            bestBytes = Math.min(bestBytes, (double) bytes / iterations);
+            bestNanos = Math.min(bestNanos, (double) nanos / iterations);
+        }
+        return new Measurement(bestBytes, bestNanos);
+    }
+
+    static void report(String name, Measurement measurement) {
+        System.out.println(String.format("%-36s %s", name, measurement));
+    }
+}
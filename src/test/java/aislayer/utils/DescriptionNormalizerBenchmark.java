@@ -0,0 +1,140 @@
+package aislayer.utils;
+
+import java.util.Random;
+
+/**
+ * DescriptionNormalizer 的等价性检查和分配对比，手动运行：
+ * java aislayer.utils.DescriptionNormalizerBenchmark [随机用例数] [随机种子]
+ * 先用随机拼接的描述片段逐条对比单次遍历改写和原来的 replace 链，结果不一致时打印用例并以状态1退出；
+ * 再对比一次快照（一组典型描述）在旧实现、不走缓存的改写和带缓存的 normalize 下的分配
+ */
+public class DescriptionNormalizerBenchmark {
+
+    // 描述中会出现的特殊片段
+    private static final String[] TOKENS = {
+            "NL", "!B!", "!M!", "!D!",
+            "[E]", "[W]", "[R]", "[B]", "[P]", "[G]",
+            "#g", "#r", "#b", "#y", "#p",
+            " ", "  "
+    };
+
+    // 普通文字，不含 # ! [ ] 这几个只在特殊片段里出现的字符
+    private static final String[] WORDS = {
+            "造成", "点伤害", "获得", "格挡", "。", "，", "抽", "张牌", "消耗", "虚无",
+            "Deal", "damage.", "Gain", "Block.", "N", "L", "E", "B", "M", "D", "g", "r", "]",
+            "Strength", "Vulnerable", "1", "2", "10", "-", "(", ")"
+    };
+
+    // 一次快照里常见的描述
+    private static final String[] SNAPSHOT = {
+            "造成 !D! 点伤害。",
+            "获得 !B! 点 格挡 。",
+            "造成 !D! 点伤害。 NL 给予 !M! 层 #y易伤 。",
+            "获得 !M! 点 #y力量 。 NL #y消耗 。",
+            "获得 [E] [E] 。 NL 抽 !M! 张牌。",
+            "#y虚无 。 NL 造成 !D! 点伤害 !M! 次。",
+            "Deal !D! damage. NL Apply !M! #yVulnerable.",
+            "Gain !B! #yBlock. NL Draw 1 card.",
+            "在你的回合开始时，获得 [R] 。",
+            "每当你打出一张 #y技能 牌，获得 #b1 点 #y敏捷 。",
+            "战斗开始时，抽 #b2 张额外的牌。",
+            "回复 #b10 点生命。",
+            "获得 #b2 点 #y力量 。",
+            "你的下一张攻击牌会被打出两次。",
+            "在你的回合结束时，对所有敌人造成 #b3 点伤害。",
+            "每回合开始时获得 #b1 层 #y人工制品 。"
+    };
+
+    public static void main(String[] args) {
+        int cases = args.length > 0 ? Integer.parseInt(args[0]) : 200000;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 20261018L;
+        if (!checkEquivalence(cases, seed)) {
+            System.exit(1);
+        }
+        measureSnapshot();
+    }
+
+    /**
+     * 原来 handleDescription 中的 replace 链
+     */
+    static String replaceChain(String description, boolean hasCard, int baseBlock, int baseMagicNumber, int baseDamage) {
+        description = description.replace("NL", "");
+        if (hasCard) {
+            description = description.replace("!B!", baseBlock + "(基础)");
+            description = description.replace("!M!", baseMagicNumber + "(基础)");
+            description = description.replace("!D!", baseDamage + "(基础)");
+        }
+        description = description.replace("[E]", "能量");
+        description = description.replace("[W]", "能量");
+        description = description.replace("[R]", "能量");
+        description = description.replace("[B]", "能量");
+        description = description.replace("[P]", "能量");
+        description = description.replace("[G]", "能量");
+        description = description.replace("#g", "");
+        description = description.replace("#r", "");
+        description = description.replace("#b", "");
+        description = description.replace("#y", "");
+        description = description.replace("#p", "");
+        description = description.replace(" ", "");
+        return description;
+    }
+
+    private static boolean checkEquivalence(int cases, long seed) {
+        Random random = new Random(seed);
+        for (int n = 0; n < cases; n++) {
+            String description = randomDescription(random);
+            boolean hasCard = random.nextBoolean();
+            int baseBlock = random.nextInt(40) - 5;
+            int baseMagicNumber = random.nextInt(40) - 5;
+            int baseDamage = random.nextInt(40) - 5;
+            String expected = replaceChain(description, hasCard, baseBlock, baseMagicNumber, baseDamage);
+            String rewritten = DescriptionNormalizer.rewrite(description, hasCard, baseBlock, baseMagicNumber, baseDamage);
+            String normalized = DescriptionNormalizer.normalize(description, hasCard, baseBlock, baseMagicNumber, baseDamage);
+            if (!expected.equals(rewritten) || !expected.equals(normalized)) {
+                System.out.println("结果不一致: [" + description + "] hasCard=" + hasCard
+                        + " B=" + baseBlock + " M=" + baseMagicNumber + " D=" + baseDamage);
+                System.out.println("  replace链: [" + expected + "]");
+                System.out.println("  单次改写: [" + rewritten + "]");
+                System.out.println("  带缓存:   [" + normalized + "]");
+                return false;
+            }
+        }
+        System.out.println(String.format("等价性检查通过: %d 条随机描述, 种子 %d", cases, seed));
+        return true;
+    }
+
+    /**
+     * 随机拼接特殊片段和普通文字，片段之间不一定有空格
+     */
+    private static String randomDescription(Random random) {
+        int parts = random.nextInt(24);
+        StringBuilder description = new StringBuilder();
+        for (int i = 0; i < parts; i++) {
+            if (random.nextInt(3) == 0) {
+                description.append(WORDS[random.nextInt(WORDS.length)]);
+            } else {
+                description.append(TOKENS[random.nextInt(TOKENS.length)]);
+            }
+        }
+        return description.toString();
+    }
+
+    private static void measureSnapshot() {
+        int iterations = 20000;
+        BenchmarkSupport.report("replace链 (每次快照)", BenchmarkSupport.measure(() -> {
+            for (String description : SNAPSHOT) {
+                BenchmarkSupport.sink = replaceChain(description, true, 5, 2, 6);
+            }
+        }, iterations));
+        BenchmarkSupport.report("单次改写 (每次快照)", BenchmarkSupport.measure(() -> {
+            for (String description : SNAPSHOT) {
+                BenchmarkSupport.sink = DescriptionNormalizer.rewrite(description, true, 5, 2, 6);
+            }
+        }, iterations));
+        BenchmarkSupport.report("normalize 带缓存 (每次快照)", BenchmarkSupport.measure(() -> {
+            for (String description : SNAPSHOT) {
+                BenchmarkSupport.sink = DescriptionNormalizer.normalize(description, true, 5, 2, 6);
+            }
+        }, iterations));
+    }
+}
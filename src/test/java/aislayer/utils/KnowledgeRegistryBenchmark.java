@@ -0,0 +1,179 @@
+package aislayer.utils;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * 已知实体判断的微基准，手动运行：java aislayer.utils.KnowledgeRegistryBenchmark
+ * 模拟一次 getInfo 遍历60张牌的牌组（抽牌堆、手牌、弃牌堆、消耗堆），对比三种实现：
+ * 最早 AISlayer 中 ArrayList.contains 的做法、按字符串键的 HashSet、现在 KnowledgeRegistry 的 BitSet 批量比较。
+ * 先检查三种实现找出的新条目相同，再分别测量全部已知（最常见）和有新牌时的耗时与分配
+ */
+public class KnowledgeRegistryBenchmark {
+
+    private static final int DECK_SIZE = 60;
+    // 游戏里卡牌种类的大致数量，决定已知集合的大小
+    private static final int CARD_POOL = 350;
+
+    /**
+     * 只保留生成键需要的字段
+     */
+    private static class Card {
+        final String cardID;
+        final int timesUpgraded;
+
+        Card(String cardID, int timesUpgraded) {
+            this.cardID = cardID;
+            this.timesUpgraded = timesUpgraded;
+        }
+    }
+
+    private static String keyOf(Card card) {
+        return card.cardID + "+" + card.timesUpgraded;
+    }
+
+    /**
+     * 最早的做法：已知列表逐个比较
+     */
+    private static List<Card> unknownByList(List<String> known, List<List<Card>> piles) {
+        List<Card> unknown = new ArrayList<>();
+        for (List<Card> pile : piles) {
+            for (Card card : pile) {
+                String key = keyOf(card);
+                if (!known.contains(key)) {
+                    known.add(key);
+                    unknown.add(card);
+                }
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * 改成位集之前的做法：按字符串键查 HashSet
+     */
+    private static List<Card> unknownBySet(Set<String> known, List<List<Card>> piles) {
+        List<Card> unknown = new ArrayList<>();
+        for (List<Card> pile : piles) {
+            for (Card card : pile) {
+                if (known.add(keyOf(card))) {
+                    unknown.add(card);
+                }
+            }
+        }
+        return unknown;
+    }
+
+    /**
+     * 现在的做法：整堆收集成位集后与已知集合比较
+     */
+    private static List<Card> unknownByBitSet(KnowledgeRegistry.Category<Card> category, List<List<Card>> piles) {
+        for (List<Card> pile : piles) {
+            category.offerAll(pile);
+        }
+        return category.drain();
+    }
+
+    public static void main(String[] args) {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 20261018L);
+        List<Card> pool = new ArrayList<>();
+        for (int i = 0; i < CARD_POOL; i++) {
+            pool.add(new Card("Card_" + i, random.nextInt(4) == 0 ? 1 : 0));
+        }
+        List<List<Card>> piles = deal(pool, random);
+
+        // 已知集合里预先放入整个卡池，和玩了几局之后的状态相当
+        List<String> knownList = new ArrayList<>();
+        Set<String> knownSet = new HashSet<>();
+        KnowledgeRegistry.Category<Card> category = new KnowledgeRegistry.Category<>(KnowledgeRegistryBenchmark::keyOf);
+        List<List<Card>> warm = new ArrayList<>();
+        warm.add(pool);
+        unknownByList(knownList, warm);
+        unknownBySet(knownSet, warm);
+        unknownByBitSet(category, warm);
+
+        if (!check(random)) {
+            System.exit(1);
+        }
+
+        int iterations = 20000;
+        System.out.println("全部已知，每次遍历" + DECK_SIZE + "张牌:");
+        BenchmarkSupport.report("  ArrayList.contains", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = unknownByList(knownList, piles), iterations));
+        BenchmarkSupport.report("  HashSet<String>", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = unknownBySet(knownSet, piles), iterations));
+        BenchmarkSupport.report("  EntityIdTable + BitSet", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = unknownByBitSet(category, piles), iterations));
+
+        // 每次遍历都出现一张从没见过的牌
+        int[] serial = {0};
+        System.out.println("每次遍历出现一张新牌:");
+        BenchmarkSupport.report("  ArrayList.contains", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = unknownByList(knownList, withNewCard(piles, "List_" + serial[0]++)), iterations / 10));
+        BenchmarkSupport.report("  HashSet<String>", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = unknownBySet(knownSet, withNewCard(piles, "Set_" + serial[0]++)), iterations / 10));
+        BenchmarkSupport.report("  EntityIdTable + BitSet", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = unknownByBitSet(category, withNewCard(piles, "Bit_" + serial[0]++)), iterations / 10));
+    }
+
+    /**
+     * 随机发若干局的牌，对比三种实现每一步找出的新条目（按首次出现的顺序）
+     */
+    private static boolean check(Random random) {
+        List<String> knownList = new ArrayList<>();
+        Set<String> knownSet = new HashSet<>();
+        KnowledgeRegistry.Category<Card> category = new KnowledgeRegistry.Category<>(KnowledgeRegistryBenchmark::keyOf);
+        List<Card> pool = new ArrayList<>();
+        for (int i = 0; i < CARD_POOL; i++) {
+            pool.add(new Card("Card_" + i, random.nextInt(4) == 0 ? 1 : 0));
+        }
+        for (int round = 0; round < 200; round++) {
+            List<List<Card>> piles = deal(pool, random);
+            List<String> byList = keys(unknownByList(knownList, piles));
+            List<String> bySet = keys(unknownBySet(knownSet, piles));
+            List<String> byBitSet = keys(unknownByBitSet(category, piles));
+            // 位集按ID顺序取出，ID按首次出现分配，所以顺序和逐个比较一致
+            if (!byList.equals(bySet) || !byList.equals(byBitSet)) {
+                System.out.println("第" + round + "轮结果不一致:");
+                System.out.println("  ArrayList: " + byList);
+                System.out.println("  HashSet:   " + bySet);
+                System.out.println("  BitSet:    " + byBitSet);
+                return false;
+            }
+        }
+        System.out.println("一致性检查通过: 200 轮");
+        return true;
+    }
+
+    private static List<List<Card>> deal(List<Card> pool, Random random) {
+        List<Card> deck = new ArrayList<>();
+        for (int i = 0; i < DECK_SIZE; i++) {
+            deck.add(pool.get(random.nextInt(pool.size())));
+        }
+        List<List<Card>> piles = new ArrayList<>();
+        piles.add(new ArrayList<>(deck.subList(0, 30)));
+        piles.add(new ArrayList<>(deck.subList(30, 35)));
+        piles.add(new ArrayList<>(deck.subList(35, 55)));
+        piles.add(new ArrayList<>(deck.subList(55, DECK_SIZE)));
+        return piles;
+    }
+
+    private static List<List<Card>> withNewCard(List<List<Card>> piles, String cardID) {
+        List<List<Card>> copy = new ArrayList<>(piles);
+        List<Card> hand = new ArrayList<>(piles.get(1));
+        hand.add(new Card(cardID, 0));
+        copy.set(1, hand);
+        return copy;
+    }
+
+    private static List<String> keys(List<Card> cards) {
+        List<String> keys = new ArrayList<>();
+        for (Card card : cards) {
+            keys.add(keyOf(card));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,145 @@
+package aislayer.utils;
+
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * 非流式响应读取的分配对比，手动运行（类路径中需要pom.xml依赖的 org.json:json）：
+ * java aislayer.utils.ResponseExtractorBenchmark
+ * 对比三种读法：最早 AIUtils 中 readLine().trim() 拼接后整体解析、LLMClient.readFully 读成字符串后整体解析、
+ * 现在 ResponseExtractor 直接从输入流提取。先检查提取结果和整体解析一致，再测量每次读取的分配
+ */
+public class ResponseExtractorBenchmark {
+
+    public static void main(String[] args) throws IOException {
+        Random random = new Random(args.length > 0 ? Long.parseLong(args[0]) : 20261018L);
+        byte[] commentary = commentaryResponse(random, 2000).getBytes(StandardCharsets.UTF_8);
+        byte[] toolCall = toolCallResponse(random).getBytes(StandardCharsets.UTF_8);
+
+        if (!check(commentary) || !check(toolCall)) {
+            System.exit(1);
+        }
+
+        int iterations = 5000;
+        System.out.println("解说响应 " + commentary.length + " 字节:");
+        measure(commentary, iterations);
+        System.out.println("工具调用响应 " + toolCall.length + " 字节:");
+        measure(toolCall, iterations);
+    }
+
+    private static void measure(byte[] body, int iterations) {
+        BenchmarkSupport.report("  readLine().trim() + JSONObject", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = extractFromJson(new JSONObject(readLines(new ByteArrayInputStream(body)))), iterations));
+        BenchmarkSupport.report("  readFully + JSONObject", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = extractFromJson(new JSONObject(readFully(new ByteArrayInputStream(body)))), iterations));
+        BenchmarkSupport.report("  ResponseExtractor", BenchmarkSupport.measure(
+                () -> BenchmarkSupport.sink = extract(new ByteArrayInputStream(body)), iterations));
+    }
+
+    /**
+     * 提取结果和整体解析 choices[0].message 的结果对比
+     */
+    private static boolean check(byte[] body) throws IOException {
+        JSONObject whole = new JSONObject(new String(body, StandardCharsets.UTF_8));
+        JSONObject message = whole.getJSONArray("choices").getJSONObject(0).getJSONObject("message");
+        ResponseExtractor.Result result = ResponseExtractor.extract(new ByteArrayInputStream(body));
+
+        String expectedContent = message.isNull("content") ? null : message.getString("content");
+        boolean contentMatches = expectedContent == null ? result.content == null : expectedContent.equals(result.content);
+        JSONObject expectedTool = message.has("tool_calls") ? message.getJSONArray("tool_calls").getJSONObject(0) : null;
+        boolean toolMatches = expectedTool == null ? result.toolCall == null : expectedTool.similar(result.toolCall);
+        boolean usageMatches = whole.getJSONObject("usage").similar(result.usage);
+        if (!contentMatches || !toolMatches || !usageMatches) {
+            System.out.println("提取结果不一致: content=" + contentMatches + " tool_calls=" + toolMatches + " usage=" + usageMatches);
+            return false;
+        }
+        System.out.println("一致性检查通过: " + body.length + " 字节");
+        return true;
+    }
+
+    /**
+     * 最早的读法：逐行读取并trim后拼接，多行的字符串内容会被改写
+     */
+    private static String readLines(InputStream stream) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            StringBuilder response = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                response.append(line.trim());
+            }
+            return response.toString();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String readFully(InputStream stream) {
+        try {
+            return LLMClient.readFully(stream);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Object extractFromJson(JSONObject response) {
+        JSONObject message = response.getJSONArray("choices").getJSONObject(0).getJSONObject("message");
+        response.optJSONObject("usage");
+        return message.has("tool_calls") ? message.getJSONArray("tool_calls").getJSONObject(0) : message.optString("content");
+    }
+
+    private static Object extract(InputStream stream) {
+        try {
+            return ResponseExtractor.extract(stream);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 带换行、转义和中文的解说响应，格式化输出（服务端常见的缩进JSON），外加模型返回的其它字段
+     */
+    private static String commentaryResponse(Random random, int contentLength) {
+        String[] pieces = {"这一刀", "太狠了！", "\\n", "\\\"完美\\\"", "格挡", "  ", "能量", "\\u2014", "AI", "\\t", "🔥"};
+        StringBuilder content = new StringBuilder();
+        while (content.length() < contentLength) {
+            content.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return "{\n"
+                + "  \"id\": \"chatcmpl-" + Long.toHexString(random.nextLong()) + "\",\n"
+                + "  \"object\": \"chat.completion\",\n"
+                + "  \"created\": 1760000000,\n"
+                + "  \"model\": \"benchmark-model\",\n"
+                + "  \"choices\": [\n"
+                + "    {\n"
+                + "      \"index\": 0,\n"
+                + "      \"message\": {\n"
+                + "        \"role\": \"assistant\",\n"
+                + "        \"content\": \"" + content + "\"\n"
+                + "      },\n"
+                + "      \"logprobs\": null,\n"
+                + "      \"finish_reason\": \"stop\"\n"
+                + "    }\n"
+                + "  ],\n"
+                + "  \"usage\": {\"prompt_tokens\": 3120, \"completion_tokens\": 412, \"total_tokens\": 3532,"
+                + " \"prompt_tokens_details\": {\"cached_tokens\": 2048}},\n"
+                + "  \"system_fingerprint\": \"fp_" + Long.toHexString(random.nextLong()) + "\"\n"
+                + "}\n";
+    }
+
+    private static String toolCallResponse(Random random) {
+        return "{\"id\":\"chatcmpl-" + Long.toHexString(random.nextLong()) + "\",\"object\":\"chat.completion\","
+                + "\"created\":1760000000,\"model\":\"benchmark-model\",\"choices\":[{\"index\":0,\"message\":{"
+                + "\"role\":\"assistant\",\"content\":null,\"tool_calls\":[{\"id\":\"call_" + random.nextInt(100000) + "\","
+                + "\"type\":\"function\",\"function\":{\"name\":\"playCard\",\"arguments\":"
+                + "\"{\\\"index\\\":2,\\\"target\\\":1,\\\"reason\\\":\\\"先打易伤再打伤害\\\"}\"}}]},"
+                + "\"logprobs\":null,\"finish_reason\":\"tool_calls\"}],"
+                + "\"usage\":{\"prompt_tokens\":5210,\"completion_tokens\":38,\"total_tokens\":5248}}";
+    }
+}